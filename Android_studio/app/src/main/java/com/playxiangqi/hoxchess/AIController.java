@@ -19,9 +19,12 @@
 package com.playxiangqi.hoxchess;
 
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,10 +51,34 @@ public class AIController {
 
     private List<Piece.Move> historyMoves_ = new ArrayList<Piece.Move>();
 
+    // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
+    // NOTE: The AI engine (JNI based) is also a single global instance.
+    //    All calls into it, except stopPonder(), are serialized on this thread
+    //    so that a ponder search never overlaps with a real search.
+    // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
+    private final HandlerThread aiThread_ = new HandlerThread("AIEngine");
+    private final Handler aiHandler_;
+
+    private static final long MIN_AI_MOVE_DELAY_MILLIS = 2000;
+    private static final String GAME_RECORDS_DIR = "games";
+    private boolean ponderEnabled_ = true;
+    private int generation_ = 0; // Bumped on reset so that AI moves of an old game are dropped.
+
+    // The requests of the game (searches, ponders, analyses) are posted to the AI thread
+    // as messages of this type, so that the background tasks can yield to them.
+    private static final int MSG_AI_REQUEST = 1;
+    private Runnable backgroundTask_; // The pending background task (if any).
+    private Runnable ponderTask_;     // The last ponder request (it may not have started).
+    private GameAnalyzer gameAnalyzer_;
+
     public interface AIListener {
         void onAINewMove(MoveInfo move);
     }
 
+    public interface AnalysisListener {
+        void onAnalysisDone(List<AIEngine.AnalysisLine> lines);
+    }
+
     // The singleton instance.
     private static AIController instance_;
 
@@ -67,14 +94,17 @@ public class AIController {
         Log.v(TAG, "[CONSTRUCTOR]: ...");
         HoxApp.getApp().getAiEngine().initGame();
 
+        aiThread_.start();
+        aiHandler_ = new Handler(aiThread_.getLooper());
+
         final TimeInfo initialTime = new TimeInfo(Enums.DEFAULT_INITIAL_GAME_TIMES);
         timeTracker_.setInitialColor(Enums.ColorEnum.COLOR_RED);
         timeTracker_.setInitialTime(initialTime);
         timeTracker_.setBlackTime(initialTime);
         timeTracker_.setRedTime(initialTime);
 
-        playerTracker_.setRedInfo(HoxApp.getApp().getString(R.string.you_label), "1501");
-        playerTracker_.setBlackInfo(HoxApp.getApp().getString(R.string.ai_label), "1502");
+        playerTracker_.setRedInfo(HoxApp.getApp().getString(R.string.you_label), 1501);
+        playerTracker_.setBlackInfo(HoxApp.getApp().getString(R.string.ai_label), 1502);
     }
 
     public void setBoardController(AIListener controller) {
@@ -97,7 +127,6 @@ public class AIController {
     static class MessageHandler extends Handler {
 
         private final AIController aiController_;
-        private Runnable aiRequest_; // Saved so that we could cancel it later.
 
         public MessageHandler(AIController controller) {
             aiController_ = controller;
@@ -107,6 +136,10 @@ public class AIController {
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_AI_MOVE_READY:
+                    if (msg.arg1 != aiController_.generation_) {
+                        Log.d(TAG, "(MessageHandler) Drop an AI move of an old game: " + msg.obj);
+                        break;
+                    }
                     aiController_.onAIMoveMade((String) msg.obj);
                     break;
 
@@ -114,40 +147,153 @@ public class AIController {
                     break;
             }
         }
+    }
 
-        public void cancelPendingAIRequest() {
-            if (aiRequest_ != null) {
-                Log.d(TAG, "(MessageHandler) Cancel the pending AI request...");
-                removeCallbacks(aiRequest_);
-                aiRequest_ = null;
-            }
-        }
+    public void setPonderEnabled(boolean enabled) {
+        ponderEnabled_ = enabled;
+    }
 
-        public void postAIRequest(final AIEngine aiEngine, long delayMillis) {
-            aiRequest_ = new Runnable() {
-                public void run() {
-                    aiRequest_ = null;
-                    final String aiMove = aiEngine.generateMove();
-                    Log.d(TAG, "... AI returned this move [" + aiMove + "].");
-                    sendMessage(obtainMessage(MSG_AI_MOVE_READY, aiMove) );
-                }
-            };
-            postDelayed(aiRequest_, delayMillis);
+    public void onHumanMove(final Position fromPos, final Position toPos) {
+        final AIEngine aiEngine = HoxApp.getApp().getAiEngine();
+
+        // If we are pondering on another move, stop it now so the real search can begin.
+        // A ponder request still in the queue is dropped: it would only delay the search.
+        if (ponderTask_ != null) {
+            aiHandler_.removeCallbacks(ponderTask_);
+            ponderTask_ = null;
         }
+        final boolean ponderHit = (AIEngine.AI_RC_OK == aiEngine.stopPonder(
+                fromPos.row, fromPos.column, toPos.row, toPos.column));
+
+        // NOTE: The search starts right away. Only the AI move is delayed
+        //       so that we have time to observe the human move.
+        //       On a ponder hit, the answer is shown as soon as it is ready.
+        final long readyAtMillis = SystemClock.uptimeMillis()
+                + (ponderHit ? 0 : MIN_AI_MOVE_DELAY_MILLIS);
+        final int generation = generation_;
+        Log.d(TAG, "On human move: Ask AI to generate a move. Ponder hit = " + ponderHit);
+
+        postRequest(new Runnable() {
+            public void run() {
+                aiEngine.onHumanMove(fromPos.row, fromPos.column, toPos.row, toPos.column);
+                final String aiMove = aiEngine.generateMove();
+                Log.d(TAG, "... AI returned this move [" + aiMove + "]. "
+                        + aiEngine.getLastSearchStats());
+                messageHandler_.sendMessageAtTime(
+                        messageHandler_.obtainMessage(MSG_AI_MOVE_READY, generation, 0, aiMove),
+                        readyAtMillis);
+            }
+        });
     }
 
-    public void onHumanMove(Position fromPos, Position toPos) {
-        AIEngine aiEngine = HoxApp.getApp().getAiEngine();
-        aiEngine.onHumanMove(fromPos.row, fromPos.column, toPos.row, toPos.column);
-        final long delayMillis = 2000; // Add delay so we have time to observe the move.
-        Log.d(TAG, "On human move: Will ask AI to generate a move after some delay:" + delayMillis);
-        messageHandler_.postAIRequest(aiEngine, delayMillis);
+    /**
+     * Analyze a position (e.g., for a hint or a review) on the AI thread.
+     * The game in progress is not affected.
+     * The listener is called on the main thread (with null if the moves are not valid),
+     * unless the game is reset before the analysis starts.
+     */
+    public void analyze(List<Piece.Move> moves, final int maxDepth, final int timeMillis,
+                        final int multiPv, final AnalysisListener listener) {
+        final AIEngine aiEngine = HoxApp.getApp().getAiEngine();
+        final String movesString = toMovesString(moves, moves.size());
+        postRequest(new Runnable() {
+            public void run() {
+                final List<AIEngine.AnalysisLine> lines =
+                        aiEngine.analyze(movesString, maxDepth, timeMillis, multiPv);
+                Log.d(TAG, "... AI finished analyzing: " + lines);
+                messageHandler_.post(new Runnable() {
+                    public void run() {
+                        listener.onAnalysisDone(lines);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Analyze the game that has just ended (in the background), and write
+     * the annotations to a game record. The previous analysis, if still running, is dropped.
+     */
+    public void analyzeFinishedGame(GameAnalyzer.Listener listener) {
+        if (gameAnalyzer_ != null) {
+            gameAnalyzer_.cancel();
+        }
+        final File recordFile = new File(new File(HoxApp.getApp().getFilesDir(), GAME_RECORDS_DIR),
+                "game-" + System.currentTimeMillis() + ".txt");
+        gameAnalyzer_ = new GameAnalyzer(referee_.getHistoryMoves(),
+                referee_.getGameStatus(), recordFile, listener);
+        gameAnalyzer_.start();
     }
 
     public void resetGame() {
         Log.d(TAG, "Reset game...");
-        messageHandler_.cancelPendingAIRequest();
-        HoxApp.getApp().getAiEngine().initGame();;
+        ++generation_;
+        aiHandler_.removeMessages(MSG_AI_REQUEST); // Cancel the pending AI requests,
+        ponderTask_ = null;                        // ... but keep the other tasks.
+        messageHandler_.removeMessages(MSG_AI_MOVE_READY);
+
+        final AIEngine aiEngine = HoxApp.getApp().getAiEngine();
+        postRequest(new Runnable() {
+            public void run() {
+                aiEngine.initGame();
+            }
+        });
+    }
+
+    /**
+     * Run a task on the AI thread that the requests of the game posted later will wait for
+     * (e.g., install and open the files of the AI engine at startup, off the main thread).
+     * Unlike the requests, it is not cancelled by resetGame().
+     *
+     * @param task The task to run on the AI thread.
+     */
+    void postSetupTask(Runnable task) {
+        aiHandler_.post(task);
+    }
+
+    /**
+     * Run a task on the AI thread with a low priority: it waits until the requests
+     * of the game (e.g., an AI move) are done. A task must be short (e.g., a search of
+     * a few hundred milliseconds) since it is not interrupted by a new request.
+     * Only one background task can be pending at a time; it runs after the previous one.
+     *
+     * @param task The task to run on the AI thread.
+     * @param onDone Called on the main thread after the task has run.
+     */
+    void postBackgroundTask(final Runnable task, final Runnable onDone) {
+        backgroundTask_ = new Runnable() {
+            public void run() {
+                if (aiHandler_.hasMessages(MSG_AI_REQUEST)) {
+                    aiHandler_.post(this); // Let the requests of the game go first.
+                    return;
+                }
+                task.run();
+                final Runnable thisTask = this;
+                messageHandler_.post(new Runnable() {
+                    public void run() {
+                        if (backgroundTask_ == thisTask) {
+                            backgroundTask_ = null;
+                        }
+                        onDone.run();
+                    }
+                });
+            }
+        };
+        aiHandler_.post(backgroundTask_);
+    }
+
+    /**
+     * @return The first 'count' moves in the format of AIEngine.analyze()
+     *         (e.g., "9081 0171 ...").
+     */
+    static String toMovesString(List<Piece.Move> moves, int count) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            final Piece.Move move = moves.get(i);
+            sb.append(move.fromPosition.row).append(move.fromPosition.column)
+              .append(move.toPosition.row).append(move.toPosition.column).append(' ');
+        }
+        return sb.toString();
     }
 
     // ***************************************************************************
@@ -175,6 +321,27 @@ public class AIController {
         if (boardController_ != null) {
             boardController_.onAINewMove(move);
         }
+
+        if (ponderEnabled_ && referee_.isGameInProgress()) {
+            startPondering();
+        }
+    }
+
+    private void postRequest(Runnable request) {
+        final Message msg = Message.obtain(aiHandler_, request);
+        msg.what = MSG_AI_REQUEST;
+        aiHandler_.sendMessage(msg);
+    }
+
+    private void startPondering() {
+        final AIEngine aiEngine = HoxApp.getApp().getAiEngine();
+        ponderTask_ = new Runnable() {
+            public void run() {
+                final int rc = aiEngine.ponder();
+                Log.d(TAG, "... AI finished pondering. rc = " + rc);
+            }
+        };
+        postRequest(ponderTask_);
     }
 
     public void saveHistoryMoves() {
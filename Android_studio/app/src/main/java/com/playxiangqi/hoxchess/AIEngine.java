@@ -18,6 +18,9 @@
  */
 package com.playxiangqi.hoxchess;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An AI engine
  */
@@ -25,6 +28,78 @@ public class AIEngine {
 
     private int currentAILevel_ = -1; // Default = "invalid level"
 
+    private volatile SearchListener searchListener_;
+
+    /**
+     * The statistics of a search.
+     */
+    public static class SearchStats {
+        public final int depth; // 0 = no search (e.g., a book move).
+        public final int score;
+        public final int nodes;
+        public final int elapsedMillis;
+        public final int hashProbes;
+        public final int hashHits;
+        public final String pv; // The principal variation, e.g., "9081 0171 ..."
+
+        public SearchStats(int depth, int score, int nodes, int elapsedMillis,
+                           int hashProbes, int hashHits, String pv) {
+            this.depth = depth;
+            this.score = score;
+            this.nodes = nodes;
+            this.elapsedMillis = elapsedMillis;
+            this.hashProbes = hashProbes;
+            this.hashHits = hashHits;
+            this.pv = pv;
+        }
+
+        public int getNodesPerSecond() {
+            return (elapsedMillis > 0 ? (int) (nodes * 1000L / elapsedMillis) : 0);
+        }
+
+        public float getHashHitRate() {
+            return (hashProbes > 0 ? (float) hashHits / hashProbes : 0f);
+        }
+
+        @Override
+        public String toString() {
+            return "[depth=" + depth + ", score=" + score + ", nodes=" + nodes
+                    + ", time=" + elapsedMillis + "ms, nps=" + getNodesPerSecond()
+                    + ", hash-hits=" + Math.round(getHashHitRate() * 100) + "%"
+                    + ", pv=" + pv + "]";
+        }
+    }
+
+    /**
+     * One of the best moves found by analyze().
+     */
+    public static class AnalysisLine {
+        public final String move; // e.g., "9081" (row, column)
+        public final int score;   // From the view of the side to move.
+        public final int depth;
+        public final String pv;   // The principal variation, starting with the move.
+
+        public AnalysisLine(String move, int score, int depth, String pv) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.pv = pv;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + move + ", score=" + score + ", depth=" + depth + ", pv=" + pv + "]";
+        }
+    }
+
+    /**
+     * The listener of the search progress.
+     * NOTE: It is called on the thread that runs generateMove().
+     */
+    public interface SearchListener {
+        void onSearchProgress(SearchStats stats);
+    }
+
     public AIEngine() {
         // Do nothing.
     }
@@ -36,13 +111,100 @@ public class AIEngine {
         setDifficultyLevel(currentAILevel_);
     }
 
+    public void setSearchListener(SearchListener listener) {
+        searchListener_ = listener;
+    }
+
+    /**
+     * @return The statistics of the last generateMove().
+     */
+    public SearchStats getLastSearchStats() {
+        final int[] values = new int[6];
+        getSearchStats(values);
+        return new SearchStats(values[0], values[1], values[2], values[3],
+                values[4], values[5], getSearchPV());
+    }
+
+    /**
+     * Analyze a position without touching the game in progress.
+     * NOTE: Like the other calls, it must not overlap with another call into the engine.
+     *
+     * @param moves The moves from the initial position, separated by blanks
+     *              (e.g., "9081 0171 ...", in the format of generateMove()),
+     *              or a position in FEN and the moves from there
+     *              (e.g., "fen 3k5/9/... w - - 0 1 moves 9081 ...").
+     * @param maxDepth The maximum depth (0 = no limit).
+     * @param timeMillis The time to think (0 = no limit). One of the limits must be set.
+     * @param multiPv The number of best moves wanted (up to 8).
+     * @return The best moves (the best first), or null if the moves are not valid.
+     */
+    public List<AnalysisLine> analyze(String moves, int maxDepth,
+                                      int timeMillis, int multiPv) {
+        final String result = nativeAnalyze(moves, maxDepth, timeMillis, multiPv);
+        if (result == null) {
+            return null;
+        }
+
+        List<AnalysisLine> lines = new ArrayList<AnalysisLine>();
+        for (String line : result.split("\n")) {
+            final String[] fields = line.split(" ", 4);
+            if (fields.length < 3) continue;
+            lines.add(new AnalysisLine(fields[0], Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]), (fields.length > 3 ? fields[3] : fields[0])));
+        }
+        return lines;
+    }
+
+    // Called by the native code after each iteration of generateMove().
+    @SuppressWarnings("unused")
+    private void onSearchProgress(int depth, int score, int nodes, int elapsedMillis,
+                                  int hashProbes, int hashHits, String pv) {
+        if (searchListener_ != null) {
+            notifySearchProgress(new SearchStats(
+                    depth, score, nodes, elapsedMillis, hashProbes, hashHits, pv));
+        }
+    }
+
+    protected void notifySearchProgress(SearchStats stats) {
+        final SearchListener listener = searchListener_;
+        if (listener != null) {
+            listener.onSearchProgress(stats);
+        }
+    }
+
     // ****************************** Native code **********************************
     public native String getInfo();
     
     public native int setDifficultyLevel(int nAILevel);
+
+    // With a fixed seed (0 = random), the same sequence of calls since initGame() (the
+    // moves, the searches at their levels, and the analyses) gives the same AI moves.
+    // The same position alone does not: the hash table is cleared only by initGame().
+    // NOTE: It also disables pondering.
+    public native int setRandomSeed(int seed);
     public native int initGame();
     public native String generateMove();
     public native int onHumanMove(int row1, int col1, int row2, int col2);
+    public native int openBook(String bookPath);
+    public native int openTablebases(String tablesDir);
+
+    // The statistics of the last generateMove() (see getLastSearchStats()).
+    private native int getSearchStats(int[] stats);
+    private native String getSearchPV();
+
+    // See analyze().
+    private native String nativeAnalyze(String moves, int maxDepth, int timeMillis, int multiPv);
+
+    // Pondering: search our answer to the predicted human move on the human 's time.
+    // NOTE: ponder() blocks until the search is done (or stopped by stopPonder()).
+    public native int ponder();
+    public native int stopPonder(int row1, int col1, int row2, int col2);
+
+    // The native return codes (see ./app/src/main/jni/MaxQi.c).
+    public static final int AI_RC_OK = 0;
+    public static final int AI_RC_ERR = 1;
+    public static final int AI_RC_NOT_FOUND = 2;
+    public static final int AI_RC_NOT_SUPPORTED = 3;
     
     static {
         System.loadLibrary("AI_MaxQi");
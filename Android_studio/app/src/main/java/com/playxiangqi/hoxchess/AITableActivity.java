@@ -167,10 +167,13 @@ public class AITableActivity extends AppCompatActivity
 
     // **** Implementation of MessageManager.EventListener ****
     @Override
-    public void onMessageReceived(MessageInfo messageInfo) {
-        Log.d(TAG, "On new message: {#" + messageInfo.getId() + " " + messageInfo + "}");
-        if (MessageManager.getInstance().isNotificationType(messageInfo.type)) {
-            invalidateOptionsMenu(); // Recreate the options menu
+    public void onMessagesReceived(List<MessageInfo> messages) {
+        Log.d(TAG, "On new messages: " + messages.size());
+        for (MessageInfo messageInfo : messages) {
+            if (MessageManager.getInstance().isNotificationType(messageInfo.type)) {
+                invalidateOptionsMenu(); // Recreate the options menu
+                break;
+            }
         }
     }
 
@@ -308,6 +311,9 @@ public class AITableActivity extends AppCompatActivity
             boardFragment.onGameEnded(gameStatus);
         }
         adjustScreenOnFlagBasedOnGameStatus();
+
+        // Annotate the game in the background (a record is written under the files folder).
+        aiController_.analyzeFinishedGame(null);
     }
 
     private void adjustScreenOnFlagBasedOnGameStatus() {
@@ -74,6 +74,26 @@ public class BoardView extends ImageView
     private Paint recentPaint_;
     private Paint noticePaint_;
 
+    // The empty board (lines and labels), rendered once per size and orientation.
+    private Bitmap boardBitmap_;
+    private boolean boardBitmapBlackOnTop_;
+
+    // The points with the "mirror" marks for Cannons and Pawns: { column, row }.
+    private static final int[][] LEFT_MIRRORS = new int[][]
+        {
+            { 1, 2 }, { 7, 2 },
+            /* { 0, 3 }, */ { 2, 3 }, { 4, 3 }, { 6, 3 }, { 8, 3 },
+            /* { 0, 6 }, */ { 2, 6 }, { 4, 6 }, { 6, 6 }, { 8, 6 },
+            { 1, 7 }, { 7, 7 }
+        };
+    private static final int[][] RIGHT_MIRRORS = new int[][]
+        {
+            { 1, 2 }, { 7, 2 },
+            { 0, 3 }, { 2, 3 }, { 4, 3 }, { 6, 3 }, /* { 8, 3 }, */
+            { 0, 6 }, { 2, 6 }, { 4, 6 }, { 6, 6 }, /* { 8, 6 }, */
+            { 1, 7 }, { 7, 7 }
+        };
+
     private static final long DURATION_OF_ANIMATION = 500; // duration of animation in milliseconds.
     private ObjectAnimator animator_;
 
@@ -251,6 +271,12 @@ public class BoardView extends ImageView
         }
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        recycleBoardBitmap(); // Rendered again if the view is attached again.
+    }
+
     private void adjustBoardParameters(int finalWidth, final int finalHeight) {
         /* Reference:
          *   http://stackoverflow.com/questions/2795833/check-orientation-on-android-phone
@@ -309,7 +335,39 @@ public class BoardView extends ImageView
             Log.d(TAG, "drawBoard(): WxH is different. Adjust parameters again... ");
             adjustBoardParameters(boardW, boardH);
         }
+        if (boardW <= 0 || boardH <= 0) {
+            return; // Not laid out yet.
+        }
 
+        // Only the pieces change from one frame to the next: the empty board is drawn
+        // into a bitmap again only when the size or the orientation has changed.
+        final boolean sizeChanged = (boardBitmap_ == null
+                || boardBitmap_.getWidth() != boardW || boardBitmap_.getHeight() != boardH);
+        if (sizeChanged || boardBitmapBlackOnTop_ != isBlackOnTop_) {
+            Log.d(TAG, "drawBoard(): Render the empty board. WxH = " + boardW + "x" + boardH);
+            if (sizeChanged) {
+                recycleBoardBitmap();
+                boardBitmap_ = Bitmap.createBitmap(boardW, boardH, Bitmap.Config.ARGB_8888);
+            } else {
+                boardBitmap_.eraseColor(Color.TRANSPARENT);
+            }
+            renderEmptyBoard(new Canvas(boardBitmap_));
+            boardBitmapBlackOnTop_ = isBlackOnTop_;
+        }
+        canvas.drawBitmap(boardBitmap_, 0, 0, null);
+    }
+
+    private void recycleBoardBitmap() {
+        if (boardBitmap_ != null) {
+            boardBitmap_.recycle();
+            boardBitmap_ = null;
+        }
+    }
+
+    /**
+     * Draw the lines and the labels of the board (without the pieces).
+     */
+    private void renderEmptyBoard(Canvas canvas) {
         for (int i = 0; i < 10; i++) { // Horizontal lines
             canvas.drawLine(startP_, startP_+i*cellSize_, startP_+8*cellSize_, startP_+i*cellSize_, linePaint_);
         }
@@ -340,35 +398,22 @@ public class BoardView extends ImageView
         final int nSize  = cellSize_ / 7; // The "mirror" 's size.
         final int nSpace = 3;             // The "mirror" 's space (how close/far).
 
-        int[][] mirrors = new int[][] /* Left sides */
-            {
-                { 1, 2 }, { 7, 2 },
-                /* { 0, 3 }, */ { 2, 3 }, { 4, 3 }, { 6, 3 }, { 8, 3 },
-                /* { 0, 6 }, */ { 2, 6 }, { 4, 6 }, { 6, 6 }, { 8, 6 },
-                { 1, 7 }, { 7, 7 }
-            };
-        for (int[] m : mirrors) {
-            int[] point = new int[] { startP_ + m[0]*cellSize_, startP_ + m[1]*cellSize_ };
-            canvas.drawLine(point[0] - nSpace, point[1] - nSpace, point[0] - nSpace - nSize,  point[1] - nSpace, linePaint_);
-            canvas.drawLine(point[0] - nSpace, point[1] - nSpace, point[0] - nSpace, point[1] - nSpace - nSize, linePaint_);
-            canvas.drawLine(point[0] - nSpace, point[1] + nSpace, point[0] - nSpace - nSize, point[1] + nSpace, linePaint_);
-            canvas.drawLine(point[0] - nSpace, point[1] + nSpace, point[0] - nSpace, point[1] + nSpace + nSize, linePaint_);
+        for (int[] m : LEFT_MIRRORS) {
+            final int x = startP_ + m[0]*cellSize_;
+            final int y = startP_ + m[1]*cellSize_;
+            canvas.drawLine(x - nSpace, y - nSpace, x - nSpace - nSize, y - nSpace, linePaint_);
+            canvas.drawLine(x - nSpace, y - nSpace, x - nSpace, y - nSpace - nSize, linePaint_);
+            canvas.drawLine(x - nSpace, y + nSpace, x - nSpace - nSize, y + nSpace, linePaint_);
+            canvas.drawLine(x - nSpace, y + nSpace, x - nSpace, y + nSpace + nSize, linePaint_);
         }
 
-        mirrors = new int[][] /* Right sides */
-            {
-                { 1, 2 }, { 7, 2 },
-                { 0, 3 }, { 2, 3 }, { 4, 3 }, { 6, 3 }, /* { 8, 3 }, */
-                { 0, 6 }, { 2, 6 }, { 4, 6 }, { 6, 6 }, /* { 8, 6 }, */
-                { 1, 7 }, { 7, 7 }
-            };
-        for (int[] m : mirrors)
-        {
-            int[] point = { startP_ + m[0]*cellSize_, startP_ + m[1]*cellSize_ };
-            canvas.drawLine(point[0] + nSpace, point[1] - nSpace, point[0] + nSpace + nSize, point[1] - nSpace, linePaint_);
-            canvas.drawLine(point[0] + nSpace, point[1] - nSpace, point[0] + nSpace, point[1] - nSpace - nSize, linePaint_);
-            canvas.drawLine(point[0] + nSpace, point[1] + nSpace, point[0] + nSpace + nSize, point[1] + nSpace, linePaint_);
-            canvas.drawLine(point[0] + nSpace, point[1] + nSpace, point[0] + nSpace, point[1] + nSpace + nSize, linePaint_);
+        for (int[] m : RIGHT_MIRRORS) {
+            final int x = startP_ + m[0]*cellSize_;
+            final int y = startP_ + m[1]*cellSize_;
+            canvas.drawLine(x + nSpace, y - nSpace, x + nSpace + nSize, y - nSpace, linePaint_);
+            canvas.drawLine(x + nSpace, y - nSpace, x + nSpace, y - nSpace - nSize, linePaint_);
+            canvas.drawLine(x + nSpace, y + nSpace, x + nSpace + nSize, y + nSpace, linePaint_);
+            canvas.drawLine(x + nSpace, y + nSpace, x + nSpace, y + nSpace + nSize, linePaint_);
         }
     }
     
@@ -45,11 +45,18 @@ public class ChatInTableSheet extends BottomSheetDialog {
 
     private static final String TAG = "ChatInTableSheet";
 
+    private static final int HISTORY_PAGE_SIZE = 30;
+
     private final TableInfo tableInfo_;
 
     private RecyclerView recyclerView_;
     private ChatInTableAdapter adapter_;
 
+    // The history (in the ChatLog) is paged in before the oldest message shown.
+    private MessageInfo oldestMessage_; // null if none yet.
+    private boolean loadingHistory_ = false;
+    private boolean noMoreHistory_ = false;
+
     private EditText editText_;
 
     /**
@@ -86,23 +93,39 @@ public class ChatInTableSheet extends BottomSheetDialog {
             }
         });
 
-        // Process the initial list of messages.
+        // Process the initial list of messages: just the newest ones that follow one
+        // another in the log, as the older ones are paged in from it.
         List<ChatMessage> chatMessages = new ArrayList<ChatMessage>();
         Log.d(TAG, "Initial list count: " + newMessages.size());
-        for (MessageInfo messageInfo : newMessages) {
+        final int first = findNewestInSequence(newMessages);
+        for (MessageInfo messageInfo : newMessages.subList(first, newMessages.size())) {
             ChatMessage chatMsg = processMessage(messageInfo);
             if (chatMsg != null) {
                 chatMessages.add(0, chatMsg);
             }
         }
+        oldestMessage_ = (first < newMessages.size() ? newMessages.get(first) : null);
 
         recyclerView_ = (RecyclerView) findViewById(R.id.sheet_chat_recycler_view);
 
         adapter_ = new ChatInTableAdapter(chatMessages);
-        RecyclerView.LayoutManager mLayoutManager = new LinearLayoutManager(activity);
-        recyclerView_.setLayoutManager(mLayoutManager);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(activity);
+        recyclerView_.setLayoutManager(layoutManager);
         recyclerView_.setItemAnimator(new DefaultItemAnimator());
         recyclerView_.setAdapter(adapter_);
+
+        // The newest message is at the top: load the older ones when the bottom is reached.
+        recyclerView_.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= adapter_.getItemCount() - 1) {
+                    loadOlderMessages();
+                }
+            }
+        });
+        if (chatMessages.size() < HISTORY_PAGE_SIZE) {
+            loadOlderMessages();
+        }
     }
 
     public void addNewMessage(MessageInfo messageInfo) {
@@ -110,7 +133,74 @@ public class ChatInTableSheet extends BottomSheetDialog {
         if (chatMsg != null) {
             adapter_.addMessage(chatMsg);
             recyclerView_.scrollToPosition(0);
+            if (oldestMessage_ == null) {
+                oldestMessage_ = messageInfo;
+            }
+        }
+    }
+
+    /**
+     * @return The position of the oldest of the newest messages that follow one another
+     *         in the log (a message may have been evicted in the middle of the list).
+     *         The newest messages not written yet are taken to follow the others.
+     */
+    private static int findNewestInSequence(List<MessageInfo> messages) {
+        int first = messages.size();
+        int logIndex = -1; // The position of messages[first] in the log, if known.
+        while (first > 0) {
+            final int previousLogIndex = messages.get(first - 1).logIndex;
+            if (logIndex >= 0 && (logIndex == 0 || previousLogIndex != logIndex - 1)) {
+                break;
+            }
+            logIndex = previousLogIndex;
+            --first;
         }
+        return first;
+    }
+
+    private void loadOlderMessages() {
+        if (loadingHistory_ || noMoreHistory_) {
+            return; // Already loading, or no more history.
+        }
+        loadingHistory_ = true;
+        if (oldestMessage_ != null && oldestMessage_.logIndex < 0) {
+            // Page in from its position in the log, once it is written.
+            ChatLog.getInstance().runAfterWrites(new Runnable() {
+                public void run() {
+                    loadingHistory_ = false;
+                    if (oldestMessage_.logIndex < 0) {
+                        noMoreHistory_ = true; // Failed to write it.
+                        return;
+                    }
+                    loadOlderMessages();
+                }
+            });
+            return;
+        }
+
+        final int beforeIndex = (oldestMessage_ != null ? oldestMessage_.logIndex : ChatLog.LATEST);
+        ChatLog.getInstance().readPage(MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE,
+                tableInfo_.tableId, beforeIndex, HISTORY_PAGE_SIZE, new ChatLog.PageListener() {
+            @Override
+            public void onPageLoaded(List<MessageInfo> messages) {
+                loadingHistory_ = false;
+                Log.d(TAG, "Loaded " + messages.size() + " older messages");
+                if (messages.isEmpty()) {
+                    noMoreHistory_ = true; // Nothing more (or the log is unreadable).
+                    return;
+                }
+                oldestMessage_ = messages.get(0);
+                noMoreHistory_ = (oldestMessage_.logIndex == 0);
+                List<ChatMessage> chatMessages = new ArrayList<ChatMessage>();
+                for (int i = messages.size() - 1; i >= 0; --i) { // The newest first.
+                    ChatMessage chatMsg = processMessage(messages.get(i));
+                    if (chatMsg != null) {
+                        chatMessages.add(chatMsg);
+                    }
+                }
+                adapter_.addOlderMessages(chatMessages);
+            }
+        });
     }
 
     private ChatMessage processMessage(MessageInfo messageInfo) {
@@ -139,7 +229,11 @@ public class ChatInTableSheet extends BottomSheetDialog {
         adapter_.addMessage(chatMsg);
         recyclerView_.scrollToPosition(0);
 
-        MessageManager.getInstance().addMyMessageInTable(userText, tableInfo_.tableId);
+        final MessageInfo myMessage =
+                MessageManager.getInstance().addMyMessageInTable(userText, tableInfo_.tableId);
+        if (oldestMessage_ == null) {
+            oldestMessage_ = myMessage;
+        }
         HoxApp.getApp().getNetworkController().onLocalMessage(chatMsg);
         return true;
     }
@@ -198,6 +292,13 @@ public class ChatInTableSheet extends BottomSheetDialog {
             messages_.add(0, message);
             this.notifyItemInserted(0);
         }
+
+        /** Add older messages (the newest of them first) at the bottom. */
+        public void addOlderMessages(List<ChatMessage> messages) {
+            final int positionStart = messages_.size();
+            messages_.addAll(messages);
+            this.notifyItemRangeInserted(positionStart, messages.size());
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,407 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The chat history on disk, so that older messages (beyond those kept in memory)
+ * can be paged in when the user scrolls back.
+ *
+ * Each conversation has two append-only files:
+ *   - The log: one record per message.
+ *   - The index: the offset of each record in the log (a long per message),
+ *     so that the N-th message is found without reading the ones before it.
+ * A page is read by memory-mapping just the part of the index and the log it covers.
+ *
+ * The files are written and read on a background thread, in the order of the requests,
+ * and a message gets its position in the log (see MessageInfo.logIndex) once written.
+ * The other APIs are to be called on the main thread.
+ *
+ * Only the conversations in the tables are logged, and just while I am in the table:
+ * they are deleted when I leave it, and (since table IDs are reused) those left behind
+ * by the last process are deleted before the first write.
+ */
+public class ChatLog {
+
+    private static final String TAG = "ChatLog";
+
+    private static final String CHAT_LOG_DIR = "chat";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int OFFSET_SIZE = 8; // The size of an index entry (a long).
+
+    /** The position to read the latest messages from (see readPage()). */
+    public static final int LATEST = Integer.MAX_VALUE;
+
+    // The singleton instance.
+    private static ChatLog instance_;
+
+    private final Handler mainHandler_ = new Handler(Looper.getMainLooper());
+    private Handler ioHandler_; // Created on demand.
+
+    // The number of messages in each conversation (by file name). On the background thread only.
+    private final Map<String, Integer> counts_ = new HashMap<String, Integer>();
+
+    public interface PageListener {
+        /**
+         * @param messages The messages of the page, the oldest first (empty if none).
+         */
+        void onPageLoaded(List<MessageInfo> messages);
+    }
+
+    /**
+     * Singleton API to return the instance.
+     */
+    public static ChatLog getInstance() {
+        if (instance_ == null) {
+            instance_ = new ChatLog();
+        }
+        return instance_;
+    }
+
+    /**
+     * Constructor
+     */
+    private ChatLog() {
+        deleteAll(); // The logs of the last process (e.g., killed in a table).
+    }
+
+    // ***************************************************************
+    //
+    //              Public APIs
+    //
+    // ***************************************************************
+
+    public static boolean isLogged(MessageInfo.MessageType messageType) {
+        return (messageType == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE);
+    }
+
+    /**
+     * Append a message to its conversation. Its position in the log is set once it is
+     * written (see runAfterWrites()).
+     */
+    public void append(MessageInfo.MessageType messageType, String key,
+                       final MessageInfo messageInfo) {
+        final String name = getFileName(messageType, key);
+        final byte[] record;
+        try {
+            record = encode(messageInfo);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to encode the message: " + e.getMessage());
+            return;
+        }
+        final File dir = getLogDir();
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                final int logIndex;
+                try {
+                    logIndex = getCount(dir, name);
+                    write(dir, name, record);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to log the message in " + name + ": " + e.getMessage());
+                    return;
+                }
+                counts_.put(name, logIndex + 1);
+                mainHandler_.post(new Runnable() {
+                    public void run() {
+                        messageInfo.logIndex = logIndex;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Run a task on the main thread once the messages appended so far are written,
+     * and have their positions in the log.
+     */
+    public void runAfterWrites(final Runnable task) {
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                mainHandler_.post(task); // After the positions posted by the writes.
+            }
+        });
+    }
+
+    /**
+     * Read (in the background) up to maxCount messages just before a given position.
+     * The messages are marked read.
+     *
+     * @param beforeIndex The position of the oldest message already shown
+     *                    (or LATEST to read the latest messages).
+     */
+    public void readPage(MessageInfo.MessageType messageType, String key,
+                         final int beforeIndex, final int maxCount, final PageListener listener) {
+        final String name = getFileName(messageType, key);
+        final MessageInfo.MessageType type = messageType;
+        final File dir = getLogDir();
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                List<MessageInfo> messages;
+                try {
+                    messages = read(dir, name, type, beforeIndex, maxCount);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to read the messages in " + name + ": " + e.getMessage());
+                    messages = new ArrayList<MessageInfo>();
+                } catch (BufferUnderflowException e) {
+                    Log.w(TAG, "The log " + name + " is corrupted.");
+                    messages = new ArrayList<MessageInfo>();
+                }
+                final List<MessageInfo> page = messages;
+                mainHandler_.post(new Runnable() {
+                    public void run() {
+                        listener.onPageLoaded(page);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Delete all conversations of a given type (e.g., those of the tables once I left them).
+     */
+    public void deleteConversations(MessageInfo.MessageType messageType) {
+        final String prefix = getFilePrefix(messageType);
+        final File dir = getLogDir();
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                for (String name : new ArrayList<String>(counts_.keySet())) {
+                    if (name.startsWith(prefix)) {
+                        counts_.remove(name);
+                    }
+                }
+                final File[] files = dir.listFiles();
+                if (files == null) return;
+                for (File file : files) {
+                    if (file.getName().startsWith(prefix) && !file.delete()) {
+                        Log.w(TAG, "Failed to delete " + file);
+                    }
+                }
+            }
+        });
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    /**
+     * Delete all files in the log directory (in the background).
+     */
+    private void deleteAll() {
+        final File dir = getLogDir();
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                counts_.clear();
+                final File[] files = dir.listFiles();
+                if (files == null) return;
+                for (File file : files) {
+                    if (!file.delete()) {
+                        Log.w(TAG, "Failed to delete " + file);
+                    }
+                }
+            }
+        });
+    }
+
+    private File getLogDir() {
+        return new File(HoxApp.getApp().getFilesDir(), CHAT_LOG_DIR);
+    }
+
+    private Handler getIoHandler() {
+        if (ioHandler_ == null) {
+            HandlerThread thread = new HandlerThread(TAG);
+            thread.start();
+            ioHandler_ = new Handler(thread.getLooper());
+        }
+        return ioHandler_;
+    }
+
+    /**
+     * @return The number of messages in the conversation (on the background thread).
+     */
+    private int getCount(File dir, String name) {
+        Integer count = counts_.get(name);
+        if (count == null) {
+            count = (int) (new File(dir, name + INDEX_SUFFIX).length() / OFFSET_SIZE);
+            counts_.put(name, count);
+        }
+        return count;
+    }
+
+    private static String getFilePrefix(MessageInfo.MessageType messageType) {
+        return (messageType == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE
+                ? "table-" : "private-");
+    }
+
+    /**
+     * @return The name of the files of a conversation (without suffix), with the key
+     *         in hex so that any pid or table ID makes a valid file name.
+     */
+    static String getFileName(MessageInfo.MessageType messageType, String key) {
+        StringBuilder name = new StringBuilder(getFilePrefix(messageType));
+        for (byte b : utf8(key != null ? key : "")) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        return name.toString();
+    }
+
+    /**
+     * A record: its size (int), then the message.
+     */
+    static byte[] encode(MessageInfo messageInfo) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // The size, set below.
+        writeString(out, messageInfo.senderPid);
+        out.writeInt(messageInfo.senderRating);
+        writeString(out, messageInfo.toPid);
+        writeString(out, messageInfo.tableId);
+        writeString(out, messageInfo.content);
+        out.close();
+
+        final byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(record.length);
+        return record;
+    }
+
+    static void write(File dir, String name, byte[] record) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        // The record first: an offset must never point past the end of the log.
+        final File logFile = new File(dir, name + LOG_SUFFIX);
+        final long offset = logFile.length();
+        FileOutputStream log = new FileOutputStream(logFile, true);
+        try {
+            log.write(record);
+        } finally {
+            log.close();
+        }
+
+        DataOutputStream index = new DataOutputStream(
+                new FileOutputStream(new File(dir, name + INDEX_SUFFIX), true));
+        try {
+            index.writeLong(offset);
+        } finally {
+            index.close();
+        }
+    }
+
+    static List<MessageInfo> read(File dir, String name, MessageInfo.MessageType messageType,
+                                  int beforeIndex, int maxCount) throws IOException {
+        List<MessageInfo> messages = new ArrayList<MessageInfo>();
+        final File indexFile = new File(dir, name + INDEX_SUFFIX);
+        final File logFile = new File(dir, name + LOG_SUFFIX);
+        if (!indexFile.exists() || !logFile.exists()) {
+            return messages;
+        }
+
+        RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+        RandomAccessFile log = new RandomAccessFile(logFile, "r");
+        try {
+            final int count = (int) (index.length() / OFFSET_SIZE);
+            final int toIndex = Math.min(beforeIndex, count);
+            final int fromIndex = Math.max(0, toIndex - maxCount);
+            if (fromIndex >= toIndex) {
+                return messages;
+            }
+
+            final MappedByteBuffer offsets = index.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    (long) fromIndex * OFFSET_SIZE, (long) (toIndex - fromIndex) * OFFSET_SIZE);
+            final long startOffset = offsets.getLong(0);
+            final long endOffset;
+            if (toIndex < count) {
+                index.seek((long) toIndex * OFFSET_SIZE);
+                endOffset = index.readLong();
+            } else {
+                endOffset = log.length();
+            }
+
+            final MappedByteBuffer records = log.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    startOffset, endOffset - startOffset);
+            for (int i = fromIndex; i < toIndex; ++i) {
+                records.position((int) (offsets.getLong((i - fromIndex) * OFFSET_SIZE) - startOffset));
+                records.getInt(); // The size.
+                MessageInfo messageInfo = new MessageInfo(messageType, readString(records));
+                messageInfo.senderRating = records.getInt();
+                messageInfo.toPid = Symbols.intern(readString(records));
+                messageInfo.tableId = Symbols.intern(readString(records));
+                messageInfo.content = readString(records);
+                messageInfo.logIndex = i;
+                messageInfo.markRead();
+                messages.add(messageInfo);
+            }
+        } finally {
+            index.close();
+            log.close();
+        }
+        return messages;
+    }
+
+    // A string: its size in UTF-8 (-1 for null), then the bytes.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = utf8(value);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        final int length = in.getInt();
+        if (length < 0) return null;
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported.
+        }
+    }
+}
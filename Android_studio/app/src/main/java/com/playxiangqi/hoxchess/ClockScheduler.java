@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tick shared by all the game clocks (see TableTimeTracker).
+ *
+ * Each clock tells when the time it shows changes next, and the next tick is at the
+ * earliest of these (a second later at most), so that a clock started at any instant
+ * (e.g., with the lag of the server) is shown on time, not on a fixed grid.
+ * The ticks run on the main thread, and only while at least one clock is running:
+ * an idle App has no timer thread and no wakeup.
+ * All the APIs are to be called on the main thread.
+ */
+public class ClockScheduler {
+
+    private static final String TAG = "ClockScheduler";
+
+    private static final long MAX_TICK_PERIOD_MS = 1000;
+
+    // The singleton instance.
+    private static ClockScheduler instance_;
+
+    public interface Clock {
+        /**
+         * Called while the clock is running, at least once a second.
+         *
+         * @return In how many milliseconds the time shown changes next
+         *         (Long.MAX_VALUE if it does not).
+         */
+        long onTick();
+    }
+
+    private final List<Clock> clocks_ = new ArrayList<Clock>(); // The running clocks.
+
+    private final Handler handler_ = new Handler(Looper.getMainLooper());
+    private boolean ticking_ = false; // Calling the clocks?
+    private boolean startedWhileTicking_ = false; // A clock not called by the current tick?
+    private final Runnable tickTask_ = new Runnable() {
+        public void run() {
+            tick();
+        }
+    };
+
+    /**
+     * Singleton API to return the instance.
+     */
+    public static ClockScheduler getInstance() {
+        if (instance_ == null) {
+            instance_ = new ClockScheduler();
+        }
+        return instance_;
+    }
+
+    // ***************************************************************
+    //
+    //              Public APIs
+    //
+    // ***************************************************************
+
+    public void startClock(Clock clock) {
+        if (clocks_.contains(clock)) return;
+        clocks_.add(clock);
+        if (ticking_) {
+            startedWhileTicking_ = true; // Ticked right after the current tick.
+            return;
+        }
+        if (clocks_.size() == 1) {
+            Log.d(TAG, "Start ticking.");
+        }
+        // Tick now: the new clock shows its time and tells when to tick next.
+        handler_.removeCallbacks(tickTask_);
+        handler_.post(tickTask_);
+    }
+
+    public void stopClock(Clock clock) {
+        if (!clocks_.remove(clock)) return;
+        if (clocks_.isEmpty()) {
+            Log.d(TAG, "Stop ticking.");
+            handler_.removeCallbacks(tickTask_);
+        }
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    private void tick() {
+        // A clock may stop (or start another one) when it ticks.
+        ticking_ = true;
+        startedWhileTicking_ = false;
+        long delayMillis = MAX_TICK_PERIOD_MS;
+        for (Clock clock : clocks_.toArray(new Clock[clocks_.size()])) {
+            delayMillis = Math.min(delayMillis, clock.onTick());
+        }
+        ticking_ = false;
+        if (clocks_.isEmpty()) return;
+
+        // From now, without catching up on the ticks missed (e.g., while the main
+        // thread was busy).
+        if (startedWhileTicking_) delayMillis = 0;
+        handler_.postAtTime(tickTask_, SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The analyzer of a finished game.
+ *
+ * It evaluates the position before every ply with the AI engine, then flags the moves
+ * that lose too much against the engine 's best move (the "score drop"). The annotations
+ * are written to a game record (a text file).
+ *
+ * The plies are analyzed one by one as background tasks of AIController, so that
+ * the analysis never competes with the searches of the game in progress.
+ */
+public class GameAnalyzer {
+
+    private static final String TAG = "GameAnalyzer";
+
+    private static final int TIME_PER_PLY_MILLIS = 300;
+
+    // The score drops (in the engine 's units: a Pawn is 100, a Horse is 450).
+    private static final int MISTAKE_SCORE_DROP = 100;
+    private static final int BLUNDER_SCORE_DROP = 300;
+
+    public enum Judgement {
+        GOOD,
+        MISTAKE,
+        BLUNDER
+    }
+
+    /**
+     * The annotation of a ply (a move).
+     */
+    public static class Annotation {
+        public final int ply;          // 0 = Red 's first move.
+        public final String move;      // e.g., "9081" (row, column)
+        public final int score;        // Before the move, from the view of the mover.
+        public final String bestMove;  // The engine 's choice (null if unknown).
+        public final int scoreDrop;    // How much the move lost against the best move.
+        public final Judgement judgement;
+
+        public Annotation(int ply, String move, int score, String bestMove,
+                          int scoreDrop, Judgement judgement) {
+            this.ply = ply;
+            this.move = move;
+            this.score = score;
+            this.bestMove = bestMove;
+            this.scoreDrop = scoreDrop;
+            this.judgement = judgement;
+        }
+
+        @Override
+        public String toString() {
+            String text = (ply + 1) + ". " + move + judgementToString(judgement);
+            text += String.format(Locale.US, " {%+d", score);
+            if (bestMove != null && !bestMove.equals(move)) {
+                text += ", best " + bestMove + ", drop " + scoreDrop;
+            }
+            return text + "}";
+        }
+    }
+
+    public interface Listener {
+        void onGameAnalyzed(List<Annotation> annotations, File recordFile);
+    }
+
+    private final List<Piece.Move> moves_;
+    private final int gameStatus_;
+    private final File recordFile_;
+    private final Listener listener_;
+
+    // Per position (before each ply, plus the final one), from the view of the side to move.
+    private final int[] scores_;
+    private final String[] bestMoves_;
+    private int nextPosition_ = 0;
+    private boolean cancelled_ = false;
+
+    /**
+     * @param moves The moves of the game (copied).
+     * @param gameStatus The final game status (see Referee).
+     * @param recordFile The game record to write.
+     * @param listener Called on the main thread when done (unless cancelled). It can be null.
+     */
+    public GameAnalyzer(List<Piece.Move> moves, int gameStatus, File recordFile,
+                        Listener listener) {
+        moves_ = new ArrayList<Piece.Move>(moves);
+        gameStatus_ = gameStatus;
+        recordFile_ = recordFile;
+        listener_ = listener;
+        scores_ = new int[moves_.size() + 1];
+        bestMoves_ = new String[moves_.size() + 1];
+    }
+
+    public void start() {
+        Log.d(TAG, "Start analyzing a game of " + moves_.size() + " plies...");
+        analyzeNextPosition();
+    }
+
+    public void cancel() {
+        cancelled_ = true;
+    }
+
+    // ***************************************************************************
+    //
+    //         Private APIs
+    //
+    // ***************************************************************************
+
+    private void analyzeNextPosition() {
+        if (cancelled_) {
+            Log.d(TAG, "The analysis is cancelled.");
+            return;
+        }
+        if (nextPosition_ > moves_.size()) {
+            finish();
+            return;
+        }
+
+        final AIEngine aiEngine = HoxApp.getApp().getAiEngine();
+        final int position = nextPosition_++;
+        final String movesString = AIController.toMovesString(moves_, position);
+        AIController.getInstance().postBackgroundTask(new Runnable() {
+            public void run() {
+                final List<AIEngine.AnalysisLine> lines =
+                        aiEngine.analyze(movesString, 0, TIME_PER_PLY_MILLIS, 1);
+                if (lines != null && !lines.isEmpty()) {
+                    scores_[position] = lines.get(0).score;
+                    bestMoves_[position] = lines.get(0).move;
+                }
+            }
+        }, new Runnable() {
+            public void run() {
+                analyzeNextPosition();
+            }
+        });
+    }
+
+    private void finish() {
+        final List<Annotation> annotations = new ArrayList<Annotation>();
+        for (int ply = 0; ply < moves_.size(); ply++) {
+            final String move = AIController.toMovesString(moves_.subList(ply, ply + 1), 1).trim();
+            int scoreDrop = 0;
+            // NOTE: The final position has no best move if the game is over (e.g., a checkmate).
+            if (bestMoves_[ply] != null && !bestMoves_[ply].equals(move)
+                    && bestMoves_[ply + 1] != null) {
+                scoreDrop = Math.max(0, scores_[ply] + scores_[ply + 1]);
+            }
+            final Judgement judgement = (scoreDrop >= BLUNDER_SCORE_DROP ? Judgement.BLUNDER
+                    : (scoreDrop >= MISTAKE_SCORE_DROP ? Judgement.MISTAKE : Judgement.GOOD));
+            annotations.add(new Annotation(ply, move, scores_[ply], bestMoves_[ply],
+                    scoreDrop, judgement));
+        }
+
+        // Write the game record in the background, too.
+        AIController.getInstance().postBackgroundTask(new Runnable() {
+            public void run() {
+                writeRecord(annotations);
+            }
+        }, new Runnable() {
+            public void run() {
+                int mistakes = 0, blunders = 0;
+                for (Annotation annotation : annotations) {
+                    if (annotation.judgement == Judgement.MISTAKE) ++mistakes;
+                    if (annotation.judgement == Judgement.BLUNDER) ++blunders;
+                }
+                Log.d(TAG, "Finished analyzing the game: " + mistakes + " mistake(s), "
+                        + blunders + " blunder(s). Record = " + recordFile_);
+                if (!cancelled_ && listener_ != null) {
+                    listener_.onGameAnalyzed(Collections.unmodifiableList(annotations),
+                            recordFile_);
+                }
+            }
+        });
+    }
+
+    private void writeRecord(List<Annotation> annotations) {
+        final File dir = recordFile_.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Failed to create the directory: " + dir);
+            return;
+        }
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(recordFile_));
+            try {
+                out.println("# Result: " + Referee.gameStatusToString(gameStatus_));
+                out.println("# Analysis: " + TIME_PER_PLY_MILLIS + " ms/ply");
+                for (Annotation annotation : annotations) {
+                    out.println(annotation);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the game record: " + e.getMessage());
+        }
+    }
+
+    private static String judgementToString(Judgement judgement) {
+        switch (judgement) {
+            case MISTAKE: return "?";
+            case BLUNDER: return "??";
+            default:      return "";
+        }
+    }
+}
@@ -213,7 +213,7 @@ public class HomeFragment extends Fragment
     }
 
     private void displayTableList() {
-        PlayerManager.getInstance().clearTables(); // will get a new list
+        PlayerManager.getInstance().markStale(); // will get a new list
         NetworkController.getInstance().sendRequestForTableList();
 
         Intent intent = new Intent(getActivity(), TablesActivity.class);
@@ -22,12 +22,25 @@ import com.playxiangqi.hoxchess.Enums.GameStatus;
 import com.playxiangqi.hoxchess.Enums.TableType;
 
 import android.app.Application;
+import android.content.pm.PackageManager;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 public class HoxApp extends Application {
 
     private static final String TAG = "HoxApp";
+
+    // The opening book of the AI engine (see ./app/src/main/jni/MaxQiBook.h).
+    private static final String OPENING_BOOK_FILE = "book.bin";
+
+    // The endgame tablebases of the AI engine (see ./app/src/main/jni/MaxQiEgtb.h).
+    private static final String TABLEBASES_DIR = "egtb";
     
     private static HoxApp thisApp_;
     
@@ -49,7 +62,14 @@ public class HoxApp extends Application {
         loadPreferences_Account();
 
         aiEngine_.setAILevel(SettingsActivity.getAILevel(this));
+        AIController.getInstance().postSetupTask(new Runnable() {
+            public void run() {
+                installOpeningBook(); // (copying them may take a while)
+                installTablebases();
+            }
+        });
         networkController_ = NetworkController.getInstance();
+        LobbyCache.getInstance().load(); // Something to show before the server 's lists.
 
         // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
         // NOTE: The referee (JNI based) has a limitation that it has ONLY one instance created!
@@ -62,6 +82,93 @@ public class HoxApp extends Application {
         NetworkTableController.getInstance().setReferee(theSharedReferee);
     }
 
+    /**
+     * Copy the opening book out of the APK's assets (if one is shipped) so that
+     * the AI engine can memory-map it. Called on the AI thread.
+     */
+    private void installOpeningBook() {
+        final File bookFile = new File(getFilesDir(), OPENING_BOOK_FILE);
+        try {
+            installAsset(OPENING_BOOK_FILE, bookFile);
+        } catch (IOException e) {
+            Log.i(TAG, "No opening book is installed: " + e.getMessage());
+            return;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "The application package was not found!");
+            return;
+        }
+
+        if (aiEngine_.openBook(bookFile.getAbsolutePath()) != AIEngine.AI_RC_OK) {
+            Log.w(TAG, "Failed to open the opening book: " + bookFile);
+        }
+    }
+
+    /**
+     * Copy the endgame tablebases (the "*.mqtb" files, if any are shipped)
+     * out of the APK's assets so that the AI engine can memory-map them.
+     * Called on the AI thread.
+     */
+    private void installTablebases() {
+        final File tablesDir = new File(getFilesDir(), TABLEBASES_DIR);
+        try {
+            final String[] names = getAssets().list(TABLEBASES_DIR);
+            if (names == null || names.length == 0) {
+                Log.i(TAG, "No endgame tablebases are shipped.");
+                return;
+            }
+            if (!tablesDir.isDirectory() && !tablesDir.mkdirs()) {
+                throw new IOException("Failed to create " + tablesDir);
+            }
+            for (String name : names) {
+                installAsset(TABLEBASES_DIR + "/" + name, new File(tablesDir, name));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to install the endgame tablebases: " + e.getMessage());
+            return;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "The application package was not found!");
+            return;
+        }
+
+        if (aiEngine_.openTablebases(tablesDir.getAbsolutePath()) != AIEngine.AI_RC_OK) {
+            Log.w(TAG, "No endgame tablebases are opened in: " + tablesDir);
+        }
+    }
+
+    /**
+     * Copy an asset to a file, unless the file is already there from
+     * the current version of the package.
+     */
+    private void installAsset(String assetName, File targetFile)
+            throws IOException, PackageManager.NameNotFoundException {
+        final long lastUpdateTime = getPackageManager()
+                .getPackageInfo(getPackageName(), 0).lastUpdateTime;
+        if (targetFile.exists() && targetFile.lastModified() >= lastUpdateTime) {
+            return;
+        }
+
+        Log.d(TAG, "Install the asset [" + assetName + "] to: " + targetFile);
+        final File tempFile = new File(targetFile.getPath() + ".tmp");
+        final InputStream in = getAssets().open(assetName);
+        try {
+            final OutputStream out = new FileOutputStream(tempFile);
+            try {
+                final byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!tempFile.renameTo(targetFile)) {
+            throw new IOException("Failed to rename " + tempFile);
+        }
+    }
+
     public static HoxApp getApp() {
         return thisApp_;
     }
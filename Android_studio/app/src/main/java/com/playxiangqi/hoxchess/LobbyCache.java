@@ -0,0 +1,250 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last state of the lobby (the players and the tables), kept on disk so that
+ * the lobby has something to show at startup, before the server sends the new lists.
+ *
+ * The file is written from a LobbySnapshot and read on a background thread.
+ * The loaded lobby is marked stale in PlayerManager until LIST and I_PLAYERS arrive.
+ */
+public class LobbyCache {
+
+    private static final String TAG = "LobbyCache";
+
+    private static final String CACHE_FILE = "lobby.bin";
+
+    private static final int MAGIC = 0x48584c42; // "HXLB"
+    private static final int FORMAT_VERSION = 1;
+
+    // A lobby older than this is not worth showing.
+    private static final long MAX_AGE_MILLIS = 24 * 3600 * 1000L;
+
+    // The singleton instance.
+    private static LobbyCache instance_;
+
+    private final Handler mainHandler_ = new Handler(Looper.getMainLooper());
+    private Handler ioHandler_; // Created on demand.
+
+    private long savedVersion_ = -1; // The version of the last snapshot written.
+
+    /**
+     * Singleton API to return the instance.
+     */
+    public static LobbyCache getInstance() {
+        if (instance_ == null) {
+            instance_ = new LobbyCache();
+        }
+        return instance_;
+    }
+
+    // ***************************************************************
+    //
+    //              Public APIs
+    //
+    // ***************************************************************
+
+    /**
+     * Read the cached lobby in the background, then give it to PlayerManager
+     * (on the main thread) unless the fresh lists have already arrived.
+     */
+    public void load() {
+        final File file = getCacheFile();
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                final List<PlayerInfo> players = new ArrayList<PlayerInfo>();
+                final List<TableInfo> tables = new ArrayList<TableInfo>();
+                try {
+                    if (!file.exists()) return;
+                    final long savedTime = read(file, players, tables);
+                    if (System.currentTimeMillis() - savedTime > MAX_AGE_MILLIS) {
+                        Log.d(TAG, "Drop the cached lobby: too old.");
+                        return;
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to read the cached lobby: " + e.getMessage());
+                    return;
+                }
+
+                Log.d(TAG, "Loaded the cached lobby: " + players.size() + " players, "
+                        + tables.size() + " tables.");
+                mainHandler_.post(new Runnable() {
+                    public void run() {
+                        PlayerManager.getInstance().loadCachedLobby(players, tables);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Write the current lobby to disk in the background, if it is fresh and has
+     * changed since the last time. Called on the main thread (e.g., on pause).
+     */
+    public void save() {
+        final PlayerManager playerManager = PlayerManager.getInstance();
+        if (playerManager.isStale() || !playerManager.arePlayersLoaded()
+                || !playerManager.areTablesLoaded()) {
+            return; // Nothing new to keep.
+        }
+        final LobbySnapshot snapshot = playerManager.publishSnapshot();
+        if (snapshot.version == savedVersion_) {
+            return;
+        }
+        savedVersion_ = snapshot.version;
+
+        final File file = getCacheFile();
+        getIoHandler().post(new Runnable() {
+            public void run() {
+                try {
+                    write(file, snapshot);
+                    Log.d(TAG, "Saved the lobby: " + snapshot);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to save the lobby: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    private File getCacheFile() {
+        return new File(HoxApp.getApp().getCacheDir(), CACHE_FILE);
+    }
+
+    private Handler getIoHandler() {
+        if (ioHandler_ == null) {
+            HandlerThread thread = new HandlerThread(TAG);
+            thread.start();
+            ioHandler_ = new Handler(thread.getLooper());
+        }
+        return ioHandler_;
+    }
+
+    /**
+     * Write the snapshot via a temporary file, so that a crash never leaves
+     * half a file behind.
+     */
+    static void write(File file, LobbySnapshot snapshot) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(snapshot.players.size());
+            for (PlayerInfo player : snapshot.players) {
+                out.writeUTF(player.pid);
+                out.writeInt(player.rating);
+            }
+
+            out.writeInt(snapshot.tables.size());
+            for (TableInfo table : snapshot.tables) {
+                writeString(out, table.tableId);
+                out.writeBoolean(table.rated);
+                writeString(out, table.itimes);
+                writeString(out, table.redTimes);
+                writeString(out, table.blackTimes);
+                writeString(out, table.redId);
+                out.writeInt(table.redRating);
+                writeString(out, table.blackId);
+                out.writeInt(table.blackRating);
+                out.writeInt(table.observers.size());
+                for (String pid : table.observers) {
+                    out.writeUTF(pid);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Failed to rename " + tempFile);
+        }
+    }
+
+    /**
+     * @return The time when the file was written.
+     */
+    static long read(File file, List<PlayerInfo> players, List<TableInfo> tables)
+            throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown format");
+            }
+            final long savedTime = in.readLong();
+
+            final int playerCount = in.readInt();
+            for (int i = 0; i < playerCount; ++i) {
+                final String pid = in.readUTF();
+                players.add(new PlayerInfo(pid, in.readInt()));
+            }
+
+            final int tableCount = in.readInt();
+            for (int i = 0; i < tableCount; ++i) {
+                TableInfo table = new TableInfo();
+                table.tableId = Symbols.intern(in.readUTF());
+                table.rated = in.readBoolean();
+                table.itimes = Symbols.intern(in.readUTF());
+                table.redTimes = in.readUTF();
+                table.blackTimes = in.readUTF();
+                table.redId = Symbols.intern(in.readUTF());
+                table.redRating = in.readInt();
+                table.blackId = Symbols.intern(in.readUTF());
+                table.blackRating = in.readInt();
+                final int observerCount = in.readInt();
+                for (int j = 0; j < observerCount; ++j) {
+                    table.observers.add(Symbols.intern(in.readUTF()));
+                }
+                tables.add(table);
+            }
+            return savedTime;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeUTF(value != null ? value : "");
+    }
+}
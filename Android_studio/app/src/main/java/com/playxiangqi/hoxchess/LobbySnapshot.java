@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A consistent view of the lobby (the online players and the tables) at one point
+ * in time, as published by PlayerManager (see getSnapshot()).
+ *
+ * Its lists and maps are read-only, but the PlayerInfo and TableInfo objects in
+ * them have public fields. They are copies owned by the snapshots (and shared by
+ * the later ones while unchanged), which nothing modifies: readers must not either.
+ * Handed over to another thread (e.g., posted to a Handler), it can then be read
+ * there without locking.
+ */
+public class LobbySnapshot {
+
+    public static final LobbySnapshot EMPTY = new LobbySnapshot(0,
+            new ArrayList<PlayerInfo>(), new ArrayList<TableInfo>(), new HashMap<String, String>());
+
+    /** Increases with each change of the lobby. */
+    public final long version;
+
+    /** The players, sorted by rating (the highest first). */
+    public final List<PlayerInfo> players;
+
+    /** The tables, in the order of the server. */
+    public final List<TableInfo> tables;
+
+    private final Map<String, PlayerInfo> playersByPid_;
+    private final Map<String, TableInfo> tablesById_;
+    private final Map<String, String> tableOfPlayer_; // pid => tableId
+
+    /**
+     * The arguments are owned by the snapshot from now on.
+     *
+     * @param players The (frozen) players.
+     * @param tables The (frozen) tables.
+     * @param tableOfPlayer pid => table ID.
+     */
+    LobbySnapshot(long version, List<PlayerInfo> players, List<TableInfo> tables,
+                  Map<String, String> tableOfPlayer) {
+        this.version = version;
+        this.players = Collections.unmodifiableList(players);
+        this.tables = Collections.unmodifiableList(tables);
+        tableOfPlayer_ = tableOfPlayer;
+
+        playersByPid_ = new HashMap<String, PlayerInfo>(players.size() * 2);
+        for (PlayerInfo player : players) {
+            playersByPid_.put(player.pid, player);
+        }
+        tablesById_ = new HashMap<String, TableInfo>(tables.size() * 2);
+        for (TableInfo table : tables) {
+            tablesById_.put(table.tableId, table);
+        }
+    }
+
+    public PlayerInfo findPlayer(String pid) {
+        return playersByPid_.get(pid);
+    }
+
+    public TableInfo findTable(String tableId) {
+        return tablesById_.get(tableId);
+    }
+
+    /**
+     * @return The ID of the table that the player is in (seated or observing), or null.
+     */
+    public String findTableOfPlayer(String pid) {
+        return tableOfPlayer_.get(pid);
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + ": " + players.size() + " players, " + tables.size() + " tables";
+    }
+}
@@ -38,6 +38,8 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 
+import java.util.List;
+
 /**
  * The main (entry-point) activity.
  */
@@ -262,6 +264,7 @@ public class MainActivity extends AppCompatActivity
         Log.d(TAG, "onPause");
         MessageManager.getInstance().removeListener(this);
         NetworkController.getInstance().removeListener(this);
+        LobbyCache.getInstance().save();
     }
     
     @Override
@@ -354,10 +357,13 @@ public class MainActivity extends AppCompatActivity
     }
 
     @Override
-    public void onMessageReceived(MessageInfo messageInfo) {
-        Log.d(TAG, "On new message: {#" + messageInfo.getId() + " " + messageInfo + "}");
-        if (MessageManager.getInstance().isNotificationType(messageInfo.type)) {
-            invalidateOptionsMenu(); // Recreate the options menu
+    public void onMessagesReceived(List<MessageInfo> messages) {
+        Log.d(TAG, "On new messages: " + messages.size());
+        for (MessageInfo messageInfo : messages) {
+            if (MessageManager.getInstance().isNotificationType(messageInfo.type)) {
+                invalidateOptionsMenu(); // Recreate the options menu
+                break;
+            }
         }
     }
 
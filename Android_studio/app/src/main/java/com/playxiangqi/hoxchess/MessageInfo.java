@@ -42,17 +42,19 @@ public class MessageInfo {
     public final String senderPid;
 
     public String content;  // This can be optional. INVITE is such a type.
-    public String senderRating = "1500";  // The default rating
+    public int senderRating = 1500;  // The default rating
 
     // Either TO player (e.g., the recipient) or table can be empty.
     public String toPid;
     public String tableId;
 
+    public int logIndex = -1; // The position in the ChatLog of its conversation (-1 if none).
+
     /** Constructor */
     public MessageInfo(MessageType messageType, String fromPlayer) {
         messageId_ = messageIdGenerator_.incrementAndGet();
         type = messageType;
-        senderPid = fromPlayer;
+        senderPid = Symbols.intern(fromPlayer);
     }
 
     public int getId() { return messageId_; }
@@ -18,31 +18,74 @@
  */
 package com.playxiangqi.hoxchess;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * This class manages the messages in the entire App.
  *
+ * The messages are indexed by ID, and the count of messages (and of the unread ones)
+ * of each type is kept up to date, so that refreshing a badge does not go through
+ * the whole list.
+ *
+ * Each conversation (a table, or a private chat with one player) keeps its messages
+ * in a MessageRing of a bounded capacity, so that the memory used by the messages
+ * stays bounded however long the App runs. A message evicted from its ring is
+ * removed from here as well. The chat messages in the tables are also appended to
+ * the ChatLog, from which the older ones can be paged back.
+ *
+ * The listeners are not called for each new message: the messages arriving within
+ * a frame are delivered together, so that a burst of chat costs one UI update.
  */
 public class MessageManager {
 
     private static final String TAG = "MessageManager";
 
+    public static final int DEFAULT_TABLE_CHAT_CAPACITY = 100;
+    public static final int DEFAULT_PRIVATE_CHAT_CAPACITY = 50;
+
+    private static final long NOTIFY_DELAY_MS = 16; // About one frame.
+
     // The singleton instance.
     private static MessageManager instance_;
 
     // Member variables...
-    private List<MessageInfo> messages_ = new ArrayList<MessageInfo>();
+    // The messages by ID, in the order they were added.
+    private final Map<Integer, MessageInfo> messages_ = new LinkedHashMap<Integer, MessageInfo>();
+
+    // The counts by MessageType (its ordinal).
+    private final int[] messageCounts_ = new int[MessageInfo.MessageType.values().length];
+    private final int[] unreadCounts_ = new int[MessageInfo.MessageType.values().length];
+
+    // The conversations by MessageType (its ordinal), then by table ID or by the other player.
+    private final List<Map<String, MessageRing>> conversations_ =
+            new ArrayList<Map<String, MessageRing>>();
+    private final int[] capacities_ = new int[MessageInfo.MessageType.values().length];
+
+    // The new messages not yet delivered to the listeners.
+    private final List<MessageInfo> pendingMessages_ = new ArrayList<MessageInfo>();
+    private final Handler notifyHandler_ = new Handler(Looper.getMainLooper());
+    private final Runnable notifyTask_ = new Runnable() {
+        public void run() {
+            notifyListeners();
+        }
+    };
 
     // *************************************************************************************
     public interface EventListener {
-        void onMessageReceived(MessageInfo messageInfo);
+        /**
+         * @param messages The new messages (at least one), the oldest first.
+         */
+        void onMessagesReceived(List<MessageInfo> messages);
     }
     private Set<EventListener> listeners_ = new HashSet<EventListener>();
 
@@ -71,6 +114,12 @@ public class MessageManager {
      */
     public MessageManager() {
         Log.v(TAG, "[CONSTRUCTOR]: ...");
+        for (MessageInfo.MessageType messageType : MessageInfo.MessageType.values()) {
+            conversations_.add(new HashMap<String, MessageRing>());
+            capacities_[messageType.ordinal()] =
+                    (messageType == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE
+                            ? DEFAULT_TABLE_CHAT_CAPACITY : DEFAULT_PRIVATE_CHAT_CAPACITY);
+        }
     }
 
     // ***************************************************************
@@ -80,12 +129,15 @@ public class MessageManager {
     // ***************************************************************
 
     public List<MessageInfo> getMessages() {
-        return messages_;
+        return new ArrayList<MessageInfo>(messages_.values());
     }
 
     public List<MessageInfo> getMessages(MessageInfo.MessageType messageType) {
         List<MessageInfo> foundMessages = new ArrayList<MessageInfo>();
-        for (MessageInfo message : messages_) {
+        if (messageCounts_[messageType.ordinal()] == 0) {
+            return foundMessages;
+        }
+        for (MessageInfo message : messages_.values()) {
             if (message.type == messageType) {
                 foundMessages.add(message);
             }
@@ -93,29 +145,45 @@ public class MessageManager {
         return foundMessages;
     }
 
+    /**
+     * @return The messages in the table, the oldest first.
+     */
+    public List<MessageInfo> getTableMessages(String tableId) {
+        return getConversation(MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE, tableId);
+    }
+
+    /**
+     * @return The private messages from and to the player, the oldest first.
+     */
+    public List<MessageInfo> getPrivateMessages(String pid) {
+        return getConversation(MessageInfo.MessageType.MESSAGE_TYPE_CHAT_PRIVATE, pid);
+    }
+
+    /**
+     * Set the maximum number of messages kept in each conversation of a given type.
+     * The oldest messages of the existing conversations are evicted if needed.
+     */
+    public void setConversationCapacity(MessageInfo.MessageType messageType, int capacity) {
+        capacities_[messageType.ordinal()] = capacity;
+        for (MessageRing ring : conversations_.get(messageType.ordinal()).values()) {
+            for (MessageInfo evicted : ring.setCapacity(capacity)) {
+                unindexMessage(evicted);
+            }
+        }
+    }
+
     public int size() {
         return messages_.size();
     }
 
     public int getMessageCount(MessageInfo.MessageType messageType) {
-        int messageCount = 0;
-        for (MessageInfo message : messages_) {
-            if (message.type == messageType) {
-                ++messageCount;
-            }
-        }
-        return messageCount;
+        return messageCounts_[messageType.ordinal()];
     }
 
     /** Get the count of INVITE + PRIVATE-Message */
     public int getNotificationCount() {
-        int messageCount = 0;
-        for (MessageInfo message : messages_) {
-            if (isNotificationType(message.type)) {
-                ++messageCount;
-            }
-        }
-        return messageCount;
+        return messageCounts_[MessageInfo.MessageType.MESSAGE_TYPE_CHAT_PRIVATE.ordinal()]
+                + messageCounts_[MessageInfo.MessageType.MESSAGE_TYPE_INVITE_TO_PLAY.ordinal()];
     }
 
     public boolean isNotificationType(MessageInfo.MessageType messageType) {
@@ -124,25 +192,19 @@ public class MessageManager {
     }
 
     public int getUnreadCount(MessageInfo.MessageType messageType) {
-        int unreadCount = 0;
-        for (MessageInfo message : messages_) {
-            if (message.type == messageType && !message.isRead()) {
-                ++unreadCount;
-            }
-        }
-        return unreadCount;
+        return unreadCounts_[messageType.ordinal()];
     }
 
     public void addMessage(MessageInfo messageInfo) {
-        messages_.add(messageInfo);
-        Log.d(TAG, "addMessage: Notify listeners-size:" + listeners_.size());
-        for (EventListener listener : listeners_) {
-            listener.onMessageReceived(messageInfo);
+        putMessage(messageInfo);
+        if (pendingMessages_.isEmpty()) {
+            notifyHandler_.postDelayed(notifyTask_, NOTIFY_DELAY_MS);
         }
+        pendingMessages_.add(messageInfo);
     }
 
     /** Add my own message in a table. No need to notify listeners */
-    public void addMyMessageInTable(String userText, String tableId) {
+    public MessageInfo addMyMessageInTable(String userText, String tableId) {
         MessageInfo myMessage = new MessageInfo(
                 MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE,
                 HoxApp.getApp().getMyPid());
@@ -150,48 +212,75 @@ public class MessageManager {
         myMessage.tableId = tableId;
         myMessage.markRead(); // I have read my own message
 
-        messages_.add(myMessage);
+        putMessage(myMessage);
         // NOTE: No need to notify listeners
+        return myMessage;
     }
 
     public void removeMessages(MessageInfo.MessageType messageType) {
         Log.d(TAG, "removeMessages: type:" + messageType);
-        Iterator<MessageInfo> iterator = messages_.iterator();
-        while (iterator.hasNext()) {
-            final MessageInfo message = iterator.next();
-            if (message.type == messageType) {
-                iterator.remove();
+        // The history of a table is kept only while I am in the table.
+        if (messageType == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE) {
+            ChatLog.getInstance().deleteConversations(messageType);
+        }
+
+        if (messageCounts_[messageType.ordinal()] == 0) {
+            return;
+        }
+        final Map<String, MessageRing> conversations = conversations_.get(messageType.ordinal());
+        for (MessageRing ring : conversations.values()) {
+            for (int i = 0; i < ring.size(); ++i) {
+                messages_.remove(ring.get(i).getId());
             }
         }
+        conversations.clear();
+        messageCounts_[messageType.ordinal()] = 0;
+        unreadCounts_[messageType.ordinal()] = 0;
     }
 
     public void removeMessage(MessageInfo messageInfo) {
-        final int idToBeRemoved = messageInfo.getId();
-        // TODO: Convert the list into a map (by ID) later.
-        Iterator<MessageInfo> iterator = messages_.iterator();
-        while (iterator.hasNext()) {
-            final MessageInfo message = iterator.next();
-            if (message.getId() == idToBeRemoved) {
-                iterator.remove();
+        final MessageInfo message = messages_.get(messageInfo.getId());
+        if (message == null) { // not found?
+            return;
+        }
+        final Map<String, MessageRing> conversations = conversations_.get(message.type.ordinal());
+        final String key = getConversationKey(message);
+        final MessageRing ring = conversations.get(key);
+        if (ring != null) {
+            ring.remove(message.getId());
+            if (ring.isEmpty()) {
+                conversations.remove(key);
             }
         }
+        unindexMessage(message);
     }
 
+    /**
+     * Mark a message read. Use this rather than MessageInfo.markRead() for a message
+     * added here, so that the unread count stays right.
+     */
     public boolean markMessageRead(MessageInfo messageInfo) {
         MessageInfo foundMessage = getMessageById(messageInfo.getId());
         if (foundMessage == null) { // not found?
             return false;
         }
-        foundMessage.markRead();
+        if (!foundMessage.isRead()) {
+            foundMessage.markRead();
+            --unreadCounts_[foundMessage.type.ordinal()];
+        }
         return true;
     }
 
     public void markMessagesOfTypeRead(MessageInfo.MessageType messageType) {
-        for (MessageInfo message : messages_) {
+        if (unreadCounts_[messageType.ordinal()] == 0) {
+            return;
+        }
+        for (MessageInfo message : messages_.values()) {
             if (message.type == messageType && !message.isRead()) {
                 message.markRead();
             }
         }
+        unreadCounts_[messageType.ordinal()] = 0;
     }
 
     // ***************************************************************
@@ -200,13 +289,86 @@ public class MessageManager {
     //
     // ***************************************************************
 
-    MessageInfo getMessageById(int messageId) {
-        for (MessageInfo message : messages_) {
-            if (message.getId() == messageId) {
-                return message;
+    private void notifyListeners() {
+        List<MessageInfo> messages = new ArrayList<MessageInfo>(pendingMessages_.size());
+        for (MessageInfo message : pendingMessages_) {
+            if (messages_.containsKey(message.getId())) { // Not removed in the meantime?
+                messages.add(message);
             }
         }
-        return null; // not found
+        pendingMessages_.clear();
+        if (messages.isEmpty()) return;
+
+        Log.d(TAG, "Notify listeners-size:" + listeners_.size() + " of " + messages.size() + " messages");
+        for (EventListener listener : listeners_) {
+            listener.onMessagesReceived(messages);
+        }
+    }
+
+    MessageInfo getMessageById(int messageId) {
+        return messages_.get(messageId); // null if not found
+    }
+
+    private void putMessage(MessageInfo messageInfo) {
+        if (messages_.containsKey(messageInfo.getId())) {
+            return; // Already here (the IDs are unique).
+        }
+
+        final Map<String, MessageRing> conversations = conversations_.get(messageInfo.type.ordinal());
+        final String key = getConversationKey(messageInfo);
+        MessageRing ring = conversations.get(key);
+        if (ring == null) {
+            ring = new MessageRing(capacities_[messageInfo.type.ordinal()]);
+            conversations.put(key, ring);
+        }
+        final MessageInfo evicted = ring.add(messageInfo);
+        if (evicted != null) {
+            Log.d(TAG, "putMessage: Evict #" + evicted.getId() + " from [" + key + "]");
+            unindexMessage(evicted);
+        }
+
+        if (messageInfo.logIndex < 0 && ChatLog.isLogged(messageInfo.type)) {
+            ChatLog.getInstance().append(messageInfo.type, key, messageInfo);
+        }
+
+        messages_.put(messageInfo.getId(), messageInfo);
+        ++messageCounts_[messageInfo.type.ordinal()];
+        if (!messageInfo.isRead()) {
+            ++unreadCounts_[messageInfo.type.ordinal()];
+        }
+    }
+
+    /**
+     * Remove the message from the index (and the counts), but not from its conversation.
+     */
+    private void unindexMessage(MessageInfo messageInfo) {
+        if (messages_.remove(messageInfo.getId()) == null) {
+            return;
+        }
+        --messageCounts_[messageInfo.type.ordinal()];
+        if (!messageInfo.isRead()) {
+            --unreadCounts_[messageInfo.type.ordinal()];
+        }
+    }
+
+    private List<MessageInfo> getConversation(MessageInfo.MessageType messageType, String key) {
+        final MessageRing ring = conversations_.get(messageType.ordinal()).get(key);
+        return (ring != null ? ring.toList() : new ArrayList<MessageInfo>());
+    }
+
+    /**
+     * @return The table ID for a message in a table, otherwise the other player.
+     */
+    private static String getConversationKey(MessageInfo messageInfo) {
+        String key;
+        if (messageInfo.type == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE) {
+            key = messageInfo.tableId;
+        } else if (HoxApp.getApp().getMyPid().equals(messageInfo.senderPid)) {
+            key = messageInfo.toPid; // My own message.
+        } else {
+            key = messageInfo.senderPid;
+        }
+        return (key != null ? key : "");
     }
 
 }
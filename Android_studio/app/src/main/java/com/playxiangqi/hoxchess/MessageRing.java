@@ -0,0 +1,166 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages of one conversation (a table, or a private chat with one player),
+ * kept in a ring buffer of a fixed capacity.
+ *
+ * When the ring is full, a new message evicts the oldest message already read,
+ * or the oldest message if none has been read yet.
+ */
+public class MessageRing {
+
+    private MessageInfo[] messages_;
+    private int head_ = 0; // The index of the oldest message.
+    private int size_ = 0;
+
+    public MessageRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        messages_ = new MessageInfo[capacity];
+    }
+
+    public int capacity() {
+        return messages_.length;
+    }
+
+    public int size() {
+        return size_;
+    }
+
+    public boolean isEmpty() {
+        return size_ == 0;
+    }
+
+    /**
+     * @param position 0 for the oldest message.
+     */
+    public MessageInfo get(int position) {
+        if (position < 0 || position >= size_) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size_);
+        }
+        return messages_[slot(position)];
+    }
+
+    /**
+     * @return The messages, the oldest first.
+     */
+    public List<MessageInfo> toList() {
+        List<MessageInfo> messages = new ArrayList<MessageInfo>(size_);
+        for (int i = 0; i < size_; ++i) {
+            messages.add(messages_[slot(i)]);
+        }
+        return messages;
+    }
+
+    /**
+     * @return The message evicted to make room for the new one, or null.
+     */
+    public MessageInfo add(MessageInfo messageInfo) {
+        final MessageInfo evicted = (size_ == messages_.length ? evict() : null);
+        messages_[slot(size_)] = messageInfo;
+        ++size_;
+        return evicted;
+    }
+
+    /**
+     * @return The removed message, or null if not found.
+     */
+    public MessageInfo remove(int messageId) {
+        for (int i = 0; i < size_; ++i) {
+            if (messages_[slot(i)].getId() == messageId) {
+                return removeAt(i);
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size_; ++i) {
+            messages_[slot(i)] = null;
+        }
+        head_ = 0;
+        size_ = 0;
+    }
+
+    /**
+     * Change the capacity, evicting the messages that no longer fit.
+     *
+     * @return The evicted messages.
+     */
+    public List<MessageInfo> setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        List<MessageInfo> evicted = new ArrayList<MessageInfo>();
+        while (size_ > capacity) {
+            evicted.add(evict());
+        }
+        MessageInfo[] messages = new MessageInfo[capacity];
+        for (int i = 0; i < size_; ++i) {
+            messages[i] = messages_[slot(i)];
+        }
+        messages_ = messages;
+        head_ = 0;
+        return evicted;
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    private int slot(int position) {
+        return (head_ + position) % messages_.length;
+    }
+
+    private MessageInfo evict() {
+        for (int i = 0; i < size_; ++i) {
+            if (messages_[slot(i)].isRead()) {
+                return removeAt(i);
+            }
+        }
+        return removeAt(0); // None has been read.
+    }
+
+    private MessageInfo removeAt(int position) {
+        final MessageInfo removed = messages_[slot(position)];
+        if (position == 0) { // The oldest: just move the head.
+            messages_[head_] = null;
+            head_ = (--size_ == 0 ? 0 : slot(1));
+            return removed;
+        }
+        // Shift the newer messages down by one.
+        for (int i = position; i < size_ - 1; ++i) {
+            messages_[slot(i)] = messages_[slot(i + 1)];
+        }
+        messages_[slot(size_ - 1)] = null;
+        --size_;
+        if (size_ == 0) {
+            head_ = 0;
+        }
+        return removed;
+    }
+}
@@ -387,6 +387,8 @@ public class NetworkController implements NetworkPlayer.NetworkEventListener {
         final String tableId = components[0];
         final String pid = components[1];
 
+        PlayerManager.getInstance().onPlayerLeftTable(tableId, pid);
+
         if (!myTable_.hasId(tableId)) { // not the table I am interested in?
             Log.w(TAG, "Ignore the LEAVE event.");
             return;
@@ -410,17 +412,19 @@ public class NetworkController implements NetworkPlayer.NetworkEventListener {
     private void handleNetworkEvent_E_JOIN(String content) {
         Log.d(TAG, "Handle event (E_JOIN): ENTER.");
         final String[] components = content.split(";");
-        final String tableId = components[0];
-        final String pid = components[1];
-        final String rating = components[2];
+        final String tableId = Symbols.intern(components[0]);
+        final String pid = Symbols.intern(components[1]);
+        final int rating = Utils.parseRating(components[2]);
         final String color = components[3];
+        final Enums.ColorEnum playerColor = Utils.stringToPlayerColor(color);
+
+        PlayerManager.getInstance().onPlayerJoinedTable(tableId, pid, rating, playerColor);
 
         if (!myTable_.hasId(tableId)) { // not the table I am interested in?
             Log.w(TAG, "Ignore the E_JOIN event.");
             return;
         }
 
-        final Enums.ColorEnum playerColor = Utils.stringToPlayerColor(color);
         myTable_.onPlayerJoined(pid, rating, playerColor);
 
         // Determine if my role has changed.
@@ -520,7 +524,7 @@ public class NetworkController implements NetworkPlayer.NetworkEventListener {
                 :  MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE);
         MessageInfo messageInfo = new MessageInfo(msgType, sender);
         messageInfo.content = message;
-        messageInfo.tableId = tableId;
+        messageInfo.tableId = Symbols.intern(tableId);
         MessageManager.getInstance().addMessage(messageInfo);
     }
 
@@ -528,7 +532,7 @@ public class NetworkController implements NetworkPlayer.NetworkEventListener {
         Log.d(TAG, "Handle event (INVITE): ENTER.");
         final String[] components = content.split(";");
         final String sender = components[0];
-        final String senderRating = components[1];
+        final int senderRating = Utils.parseRating(components[1]);
         final String invitedPlayer = components[2]; // // The invited player
 
         final String myPid = HoxApp.getApp().getMyPid();
@@ -543,7 +547,7 @@ public class NetworkController implements NetworkPlayer.NetworkEventListener {
         MessageInfo messageInfo = new MessageInfo(
                 MessageInfo.MessageType.MESSAGE_TYPE_INVITE_TO_PLAY,
                 sender);
-        messageInfo.tableId = tableIdString;
+        messageInfo.tableId = Symbols.intern(tableIdString);
         messageInfo.senderRating = senderRating;
         MessageManager.getInstance().addMessage(messageInfo);
     }
@@ -588,13 +592,15 @@ public class NetworkController implements NetworkPlayer.NetworkEventListener {
         final String[] components = content.split(";");
         final String tableId = components[0];
         final String pid = components[1];
-        final String rating = components[2];
+        final int rating = Utils.parseRating(components[2]);
 
         if (HoxApp.getApp().getMyPid().equals(pid)) { // my new rating?
             Log.i(TAG, "Received my new rating: " + myRating_ + " => " + rating);
-            myRating_ = rating;
+            myRating_ = components[2];
         }
 
+        PlayerManager.getInstance().updatePlayerRating(pid, rating);
+
         if (myTable_.hasId(tableId)) {
             NetworkTableController.getInstance().onPlayerRatingUpdate(pid, rating);
         }
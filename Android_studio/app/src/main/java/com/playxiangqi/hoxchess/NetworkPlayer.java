@@ -49,8 +49,9 @@ class NetworkPlayer extends Thread {
     
     private static final String APP_VERSION = "AOXChess-1.0";
     
-    private Selector selector_;
+    private volatile Selector selector_; // Woken up by the other threads to send a request.
     private SocketChannel socketChannel_;
+    private SelectionKey selectionKey_;
     private boolean disconnectionRequested_ = false;
     
     private String pid_;
@@ -126,12 +127,14 @@ class NetworkPlayer extends Thread {
                 } catch (ClosedChannelException e) {
                     Log.w(TAG, "The connection has been closed while handling network messages.");
                     connectionState_ = ConnectionState.CONNECTION_STATE_NONE;
+                    ServerClock.getInstance().onDisconnected();
                     if (networkEventListener_ != null) {
                         networkEventListener_.onNetworkCode(NETWORK_CODE_CLOSED);
                     }
                 } catch (IOException e) {
                     Log.w(TAG, "An IOException exception while handling network messages.");
                     connectionState_ = ConnectionState.CONNECTION_STATE_NONE;
+                    ServerClock.getInstance().onDisconnected();
                     if (!disconnectionRequested_) {
                         disconnectionRequested_ = true;
                     }
@@ -167,48 +170,52 @@ class NetworkPlayer extends Thread {
     public void disconnectFromServer() {
         Log.d(TAG, "Disconnect from server...");
         handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_DISCONNECT_FROM_SERVER));
+        final Selector selector = selector_;
+        if (selector != null) {
+            selector.wakeup();
+        }
     }
     
     public void sendRequest_LIST() {
         Log.d(TAG, "Send 'LIST' request to server...");
         String request = "op=LIST&pid=" + pid_;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_JOIN(String tableId, String joinColor) {
         Log.d(TAG, "Send 'JOIN' to server... TableId: " + tableId + ", joinColor: " + joinColor);
         String request = "op=JOIN&pid=" + pid_ + "&tid=" + tableId + "&color=" + joinColor;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_LEAVE(String tableId) {
         Log.d(TAG, "Send 'LEAVE' request to server...");
         String request = "op=LEAVE&pid=" + pid_ + "&tid=" + tableId;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_DRAW(String tableId) {
         Log.d(TAG, "Send 'DRAW' request to server...");
         String request = "op=DRAW&pid=" + pid_ + "&tid=" + tableId;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_RESIGN(String tableId) {
         Log.d(TAG, "Send 'RESIGN' request to server...");
         String request = "op=RESIGN&pid=" + pid_ + "&tid=" + tableId;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_RESET(String tableId) {
         Log.d(TAG, "Send 'RESET' request to server...");
         String request = "op=RESET&pid=" + pid_ + "&tid=" + tableId;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
     
     public void sendRequest_MOVE(String tableId, String move) {
         Log.d(TAG, "Send 'MOVE' request to server...");
         String request = "op=MOVE&pid=" + pid_ + "&tid=" + tableId  + "&move=" + move;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
     
     public void sendRequest_MSG(String tableId, String otherPID, String msg) {
@@ -219,25 +226,36 @@ class NetworkPlayer extends Thread {
         } else {
             request = "op=MSG&pid=" + pid_ + "&oid=" + otherPID + "&msg=" + msg;
         }
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
     
     public void sendRequest_NEW(String itimes) {
         Log.d(TAG, "Send 'NEW (table)' request to server. itimes = " + itimes);
         String request = "op=NEW&pid=" + pid_ + "&itimes=" + itimes;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_INVITE(String invitee, String tableId) {
         Log.d(TAG, "Send 'INVITE' request to server...");
         String request = "op=INVITE&pid=" + pid_ + "&oid=" + invitee + "&tid=" + tableId;
-        handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        queueRequest(request);
     }
 
     public void sendRequest_PLAYER_INFO(String otherPID) {
         Log.d(TAG, "Send 'PLAYER_INFO' request to server...");
         String request = "op=PLAYER_INFO&pid=" + pid_ + "&oid=" + otherPID;
+        queueRequest(request);
+    }
+
+    /**
+     * Hand the request to the network thread, and wake it up if it is waiting for data.
+     */
+    private void queueRequest(String request) {
         handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_SEND_REQUEST, request));
+        final Selector selector = selector_;
+        if (selector != null) {
+            selector.wakeup();
+        }
     }
 
     private void handleConnectToServer() throws IOException {
@@ -255,7 +273,7 @@ class NetworkPlayer extends Thread {
         socketChannel_ = SocketChannel.open();
         socketChannel_.configureBlocking(false);
         
-        /*SelectionKey selectionKey =*/ socketChannel_.register(selector_,
+        selectionKey_ = socketChannel_.register(selector_,
                 SelectionKey.OP_CONNECT | SelectionKey.OP_READ | SelectionKey.OP_WRITE);
         try {
             socketChannel_.connect(new InetSocketAddress("games.playxiangqi.com", 80));
@@ -287,6 +305,7 @@ class NetworkPlayer extends Thread {
         //Log.d(TAG, "Handle 'Check for work'...");
             
         int readyChannels = selector_.select(1000); // 1-second interval
+        final long readyNanos = System.nanoTime(); // When the data (if any) arrived.
         if (readyChannels > 0) {
             Set<SelectionKey> selectedKeys = selector_.selectedKeys();
             Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
@@ -302,7 +321,7 @@ class NetworkPlayer extends Thread {
                     try {
                         readIncomingData();
                     } finally {
-                        processIncomingData(); // always process whatever data collected so far.
+                        processIncomingData(readyNanos); // always process whatever data collected so far.
                     }
 
                 } else if (key.isWritable()) {
@@ -325,6 +344,8 @@ class NetworkPlayer extends Thread {
                 Log.i(TAG, "Handle 'Check for work'... Closing the channel!");
                 socketChannel_.close();
                 socketChannel_ = null;
+                selectionKey_ = null;
+                ServerClock.getInstance().onDisconnected();
                 connectionState_ = ConnectionState.CONNECTION_STATE_NONE;
                 if (networkEventListener_ != null) {
                     networkEventListener_.onNetworkCode(NETWORK_CODE_DISCONNECTED);
@@ -332,7 +353,8 @@ class NetworkPlayer extends Thread {
             }
             disconnectionRequested_ = false;
         } else {
-            handler_.sendMessageDelayed(handler_.obtainMessage(MSG_NETWORK_CHECK_FOR_WORK), 2000);
+            // No delay: select() waits for the data, and is woken up by a new request.
+            handler_.sendMessage(handler_.obtainMessage(MSG_NETWORK_CHECK_FOR_WORK));
         }
         
         //Log.d(TAG, "Handle 'Check for work'... DONE *****");
@@ -344,6 +366,10 @@ class NetworkPlayer extends Thread {
         if (!disconnectionRequested_) {
             disconnectionRequested_ = true;
         }
+        if (selectionKey_ != null && selectionKey_.isValid()) {
+            // Wait for the channel to be writable again to send LOGOUT.
+            selectionKey_.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
         
         Log.i(TAG, "Handle 'Disconnect from server'... DONE *****");
     }
@@ -356,6 +382,11 @@ class NetworkPlayer extends Thread {
         sendRequest(request);
         
         connectionState_ = ConnectionState.CONNECTION_STATE_LOGIN;
+        if (!disconnectionRequested_) {
+            // From now on, only wait for data. Otherwise, select() would return at once
+            // since the channel is almost always writable.
+            selectionKey_.interestOps(SelectionKey.OP_READ);
+        }
         Log.i(TAG, "LOGIN: End");
     }
     
@@ -392,6 +423,7 @@ class NetworkPlayer extends Thread {
             int bytesWritten = socketChannel_.write(buf);
             Log.v(TAG, " ... bytesWritten = " + bytesWritten);
         }
+        ServerClock.getInstance().onRequestSent(request, System.nanoTime());
         
         Log.d(TAG, "Send request: End");
     }
@@ -427,7 +459,10 @@ class NetworkPlayer extends Thread {
         Log.v(TAG, "READ (data): End. inData_ 's length = " + inData_.length());
     }
     
-    private void processIncomingData() {
+    /**
+     * @param receivedNanos The time (System.nanoTime()) when the data arrived.
+     */
+    private void processIncomingData(long receivedNanos) {
         Log.i(TAG, "Process (data): Enter. inData_ 's length = " + inData_.length());
         
         final int length = inData_.length();
@@ -444,6 +479,7 @@ class NetworkPlayer extends Thread {
                 //Log.i(TAG, "Process (data): ... got an event = [" + anEvent + "].");
                 startIndex = index + 1;
 
+                ServerClock.getInstance().onEventReceived(anEvent, receivedNanos);
                 if (networkEventListener_ != null) {
                     networkEventListener_.onNetworkEvent(anEvent);
                 }
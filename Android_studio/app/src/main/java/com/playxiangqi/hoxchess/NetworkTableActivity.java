@@ -147,6 +147,7 @@ public class NetworkTableActivity extends AppCompatActivity
         Log.d(TAG, "onPause");
         MessageManager.getInstance().removeListener(this);
         adjustScreenOnFlagBasedOnGameStatus();
+        LobbyCache.getInstance().save();
     }
 
     @Override
@@ -364,8 +365,7 @@ public class NetworkTableActivity extends AppCompatActivity
         // OPTION #2:
         // Using the BottomSheet.
 
-        List<MessageInfo> newMessages =
-                MessageManager.getInstance().getMessages(MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE);
+        List<MessageInfo> newMessages = MessageManager.getInstance().getTableMessages(tableId_);
         //ChatFragment chatFragment = myChatFragment_.get();
         //if (chatFragment != null) {
         //    chatFragment.addNewMessages(newMessages);
@@ -570,7 +570,7 @@ public class NetworkTableActivity extends AppCompatActivity
     }
 
     @Override
-    public void onPlayerJoin(String pid, String rating, Enums.ColorEnum playerColor) {
+    public void onPlayerJoin(String pid, int rating, Enums.ColorEnum playerColor) {
         PlayersFragment playersFragment = myPlayersFragment_.get();
         if (playersFragment != null) {
             playersFragment.onPlayerJoin(pid, rating, playerColor);
@@ -645,19 +645,29 @@ public class NetworkTableActivity extends AppCompatActivity
 
     // **** Implementation of MessageManager.EventListener ****
     @Override
-    public void onMessageReceived(MessageInfo messageInfo) {
-        Log.d(TAG, "On new message: {#" + messageInfo.getId() + " " + messageInfo + "}");
-        if (MessageManager.getInstance().isNotificationType(messageInfo.type)) {
-            invalidateOptionsMenu(); // Recreate the options menu
-
-        } else if (messageInfo.type == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE) {
-
-            if (chatSheet_ != null) { // The chat sheet is visible to the user?
-                chatSheet_.addNewMessage(messageInfo);
-                messageInfo.markRead();
-                return;
+    public void onMessagesReceived(List<MessageInfo> messages) {
+        Log.d(TAG, "On new messages: " + messages.size());
+        boolean hasNotification = false;
+        boolean hasTableMessage = false;
+        for (MessageInfo messageInfo : messages) {
+            if (MessageManager.getInstance().isNotificationType(messageInfo.type)) {
+                hasNotification = true;
+
+            } else if (messageInfo.type == MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE) {
+                if (chatSheet_ != null) { // The chat sheet is visible to the user?
+                    chatSheet_.addNewMessage(messageInfo);
+                    MessageManager.getInstance().markMessageRead(messageInfo);
+                } else {
+                    hasTableMessage = true;
+                }
             }
+        }
+
+        if (hasNotification) {
+            invalidateOptionsMenu(); // Recreate the options menu
+        }
 
+        if (hasTableMessage) {
             int currentPageIndex = viewPager_.getCurrentItem();
             if (currentPageIndex == MainPagerAdapter.POSITION_BOARD) {
                 BoardFragment boardFragment = myBoardFragment_.get();
@@ -682,10 +692,12 @@ public class NetworkTableActivity extends AppCompatActivity
     public void onLocalMove(Position fromPos, Position toPos, Enums.GameStatus gameStatus) {
         Log.d(TAG, "Handle local move: referee 's moveCount = " + referee_.getMoveCount());
 
-        timeTracker_.nextColor();
+        // The move reaches the server (which keeps the official clocks) a moment from now.
+        final long lagMillis = -ServerClock.getInstance().getOneWayDelayMillis();
+        timeTracker_.nextColor(lagMillis);
 
         if (referee_.getMoveCount() == 2) {
-            timeTracker_.start();
+            timeTracker_.start(lagMillis);
             adjustScreenOnFlagBasedOnGameStatus();
         }
 
@@ -759,7 +771,7 @@ public class NetworkTableActivity extends AppCompatActivity
     }
 
     private void displayTableList() {
-        PlayerManager.getInstance().clearTables(); // will get a new list
+        PlayerManager.getInstance().markStale(); // will get a new list
         NetworkController.getInstance().sendRequestForTableList();
 
         Intent intent = new Intent(this, TablesActivity.class);
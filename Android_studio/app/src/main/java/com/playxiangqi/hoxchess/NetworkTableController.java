@@ -54,7 +54,7 @@ public class NetworkTableController {
         void resetBoardWithNewMoves(MoveInfo[] moves);
         void clearTable();
         void onLocalPlayerJoined(Enums.ColorEnum myColor);
-        void onPlayerJoin(String pid, String rating, Enums.ColorEnum playerColor);
+        void onPlayerJoin(String pid, int rating, Enums.ColorEnum playerColor);
         void onPlayerLeave(String pid);
         void showGameMessage_DRAW(String pid);
         void onGameEnded(Enums.GameStatus gameStatus);
@@ -197,7 +197,7 @@ public class NetworkTableController {
         }
     }
 
-    public void onPlayerRatingUpdate(String pid, String newRating) {
+    public void onPlayerRatingUpdate(String pid, int newRating) {
         playerTracker_.onPlayerRatingUpdate(pid, newRating);
         playerTracker_.syncUI();
     }
@@ -222,8 +222,10 @@ public class NetworkTableController {
             boardController_.updateBoardWithNewMove(move);
         }
 
-        timeTracker_.nextColor();
-        timeTracker_.start();
+        // The move was made on the server a moment ago.
+        final long lagMillis = ServerClock.getInstance().getOneWayDelayMillis();
+        timeTracker_.nextColor(lagMillis);
+        timeTracker_.start(lagMillis);
     }
 
     public void onResetBoardWithMoves(MoveInfo[] moves) {
@@ -243,7 +245,7 @@ public class NetworkTableController {
         }
 
         timeTracker_.setInitialColor(referee_.getNextColor());
-        timeTracker_.start();
+        timeTracker_.start(ServerClock.getInstance().getOneWayDelayMillis());
     }
 
     public void onJoinTableError(String errorMessage, Enums.ErrorCode errorCode) {
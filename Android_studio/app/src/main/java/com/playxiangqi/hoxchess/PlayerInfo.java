@@ -23,15 +23,19 @@ package com.playxiangqi.hoxchess;
  */
 public class PlayerInfo {
 
-    public String pid = "";
-    public String rating = "0";
+    public String pid = ""; // Interned (see Symbols).
+    public int rating = 0;
     
     public PlayerInfo() {
         // empty
     }
     
     public PlayerInfo(String pid, String rating) {
-        this.pid = pid;
+        this(pid, Utils.parseRating(rating));
+    }
+
+    public PlayerInfo(String pid, int rating) {
+        this.pid = Symbols.intern(pid);
         this.rating = rating;
     }
     
@@ -52,8 +56,8 @@ public class PlayerInfo {
         return getInfo();
     }
 
-    static public String formatPlayerInfo(String pid, String rating) {
+    static public String formatPlayerInfo(String pid, int rating) {
         return (pid.length() == 0
-                ? "*" : String.format("%s(%s)", pid, rating));
+                ? "*" : pid + "(" + rating + ")");
     }
 }
@@ -18,17 +18,24 @@
  */
 package com.playxiangqi.hoxchess;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * This class manages the list of ALL online players
  *
+ * It is updated (and its live lists read) on the UI thread only. Other threads
+ * read the LobbySnapshot returned by getSnapshot(), which the UI thread publishes
+ * once per batch of changes.
  */
 public class PlayerManager {
 
@@ -38,16 +45,42 @@ public class PlayerManager {
     private static PlayerManager instance_;
 
     // Member variables...
-    private HashMap<String, PlayerInfo> players_ = new HashMap<String, PlayerInfo>();
+    private final SortedPlayerList players_ = new SortedPlayerList(); // by rating
     private boolean playersLoaded_ = false; // already loaded with the initial list of players?
 
     private List<TableInfo> tables_ = new ArrayList<TableInfo>();
     private boolean tablesLoaded_ = false; // already loaded with the new list of tables?
 
+    // Still showing the last lists (e.g., from LobbyCache) while waiting for new ones?
+    private boolean playersStale_ = false;
+    private boolean tablesStale_ = false;
+
+    // The indexes of the tables: by table ID, and by the players in them (seated or observing).
+    private Map<String, TableInfo> tablesById_ = new HashMap<String, TableInfo>();
+    private Map<String, String> tableOfPlayer_ = new HashMap<String, String>(); // pid => tableId
+    private TableIndex tableIndex_ = new TableIndex(); // the tables with an open seat
+
+    // The version of the lobby, increased by each change. The last snapshot published
+    // (read by any thread), and the frozen copies in it, reused by the next snapshot
+    // unless the player (or table) has changed since.
+    private long version_ = 0;
+    private volatile LobbySnapshot snapshot_ = LobbySnapshot.EMPTY;
+    private final Handler mainHandler_ = new Handler(Looper.getMainLooper());
+    private boolean publishPending_ = false; // a publishTask_ posted, not yet run?
+    private final Runnable publishTask_ = new Runnable() {
+        public void run() {
+            publishPending_ = false;
+            publishSnapshot();
+        }
+    };
+    private Map<String, PlayerInfo> frozenPlayers_ = new HashMap<String, PlayerInfo>();
+    private Map<String, TableInfo> frozenTables_ = new HashMap<String, TableInfo>();
+
     // *************************************************************************************
     public interface EventListener {
         void onPlayersLoaded();
         void onTablesLoaded();
+        void onTableUpdated(TableInfo table); // Its seats have changed.
     }
     private Set<EventListener> listeners_ = new HashSet<EventListener>();
 
@@ -88,75 +121,328 @@ public class PlayerManager {
 
     public void clearTables() {
         tables_.clear();
+        tablesById_.clear();
+        tableOfPlayer_.clear();
+        tableIndex_.clear();
+        frozenTables_.clear();
         tablesLoaded_ = false;
+        onLobbyChanged();
     }
 
     public boolean areTablesLoaded() {
         return tablesLoaded_;
     }
 
+    /**
+     * @return true if the players or the tables are the last ones known, not yet
+     *         confirmed by the server.
+     */
+    public boolean isStale() {
+        return playersStale_ || tablesStale_;
+    }
+
+    /**
+     * Keep showing the current tables, marked stale, until the new list arrives
+     * (instead of clearTables(), when a new list is requested). The players are not
+     * marked: the server sends them only at login, then keeps them current with
+     * LOGIN and LOGOUT events.
+     */
+    public void markStale() {
+        tablesStale_ = tablesLoaded_;
+    }
+
+    /**
+     * Show the lobby cached from the last session, unless the server has already
+     * sent the new lists. It stays stale until then.
+     */
+    public void loadCachedLobby(List<PlayerInfo> players, List<TableInfo> tables) {
+        if (playersLoaded_ || tablesLoaded_) {
+            Log.d(TAG, "loadCachedLobby: Ignore the cached lobby. The lists are loaded.");
+            return;
+        }
+        loadPlayers(players, true);
+        loadTables(tables, true);
+    }
+
+    /**
+     * @return The live tables (UI thread only). See getSnapshot() for other threads.
+     */
     public List<TableInfo> getTables() {
-        return tables_;
+        return Collections.unmodifiableList(tables_);
+    }
+
+    /**
+     * @return The last published state of the lobby, as a consistent copy (any thread).
+     *         It may miss the changes of the batch that the UI thread is still handling.
+     *         On the UI thread, call publishSnapshot() to include them.
+     */
+    public LobbySnapshot getSnapshot() {
+        return snapshot_;
+    }
+
+    /**
+     * Publish the changes not yet in the snapshot now, rather than after the current
+     * batch (UI thread only).
+     *
+     * @return The new snapshot, up to date with the lobby.
+     */
+    public LobbySnapshot publishSnapshot() {
+        if (snapshot_.version != version_) {
+            snapshot_ = takeSnapshot();
+        }
+        return snapshot_;
+    }
+
+    /**
+     * @return The tables matching the query (e.g., an open Black seat in a 15-minute game
+     *         against a 1400-1600 player), from the index rather than the whole list.
+     */
+    public List<TableInfo> findTables(TableIndex.Query query) {
+        return tableIndex_.find(query);
     }
 
     public int size() {
         return players_.size();
     }
 
-    public HashMap<String, PlayerInfo> getPlayers() {
+    /**
+     * @return The live players (UI thread only), sorted by rating. Add a
+     *         SortedPlayerList.Listener to it to follow the changes row by row.
+     */
+    public SortedPlayerList getPlayers() {
         return players_;
     }
 
     public void setInitialPlayers(List<PlayerInfo> players) {
-        players_.clear();
-        for (PlayerInfo playerInfo : players) {
-            players_.put(playerInfo.pid, playerInfo);
+        loadPlayers(players, false);
+    }
+
+    public void setTables(List<TableInfo> tables) {
+        loadTables(tables, false);
+    }
+
+    public void addPlayer(PlayerInfo playerInfo) {
+        players_.put(playerInfo.pid, playerInfo.rating);
+        frozenPlayers_.remove(playerInfo.pid);
+        onLobbyChanged();
+    }
+
+    public void updatePlayerRating(String pid, int rating) {
+        if (players_.find(pid) != null) {
+            players_.put(pid, rating);
+            frozenPlayers_.remove(pid);
+        }
+
+        final TableInfo table = getTableOfPlayer(pid);
+        if (table != null) {
+            if (pid.equals(table.redId)) {
+                table.redRating = rating;
+                onTableUpdated(table);
+            } else if (pid.equals(table.blackId)) {
+                table.blackRating = rating;
+                onTableUpdated(table);
+            }
+        }
+        onLobbyChanged();
+    }
+
+    public void removePlayer(String pid) {
+        players_.remove(pid);
+        frozenPlayers_.remove(pid);
+
+        final TableInfo table = getTableOfPlayer(pid);
+        tableOfPlayer_.remove(pid);
+        if (table != null) {
+            table.onPlayerLeft(pid);
+            onTableUpdated(table);
+        }
+        onLobbyChanged();
+    }
+
+    /**
+     * A player joined a table (or changed seats in it). Sent for any table, not just mine.
+     */
+    public void onPlayerJoinedTable(String tableId, String pid, int rating,
+                                    Enums.ColorEnum playerColor) {
+        final String oldTableId = tableOfPlayer_.put(pid, tableId);
+        if (oldTableId != null && !oldTableId.equals(tableId)) {
+            final TableInfo oldTable = tablesById_.get(oldTableId);
+            if (oldTable != null) {
+                oldTable.onPlayerLeft(pid);
+                onTableUpdated(oldTable);
+            }
+        }
+
+        final TableInfo table = tablesById_.get(tableId);
+        if (table != null) {
+            table.onPlayerJoined(pid, rating, playerColor);
+            onTableUpdated(table);
+        }
+        players_.notifyChanged(pid);
+        onLobbyChanged();
+    }
+
+    /**
+     * A player left a table. Sent for any table, not just mine.
+     */
+    public void onPlayerLeftTable(String tableId, String pid) {
+        if (tableId.equals(tableOfPlayer_.get(pid))) {
+            tableOfPlayer_.remove(pid);
+        }
+
+        final TableInfo table = tablesById_.get(tableId);
+        if (table != null) {
+            table.onPlayerLeft(pid);
+            onTableUpdated(table);
         }
+        players_.notifyChanged(pid);
+        onLobbyChanged();
+    }
+
+    public boolean arePlayersLoaded() {
+        return playersLoaded_;
+    }
+
+    /**
+     * @return The ID of the table that the player is in (seated or observing), or null.
+     */
+    public String findTableOfPlayer(String pid) {
+        return tableOfPlayer_.get(pid);
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    private void loadPlayers(List<PlayerInfo> players, boolean stale) {
+        if (playersStale_ && !stale) {
+            reconcilePlayers(players);
+        } else {
+            players_.setAll(players);
+        }
+        frozenPlayers_.clear();
         playersLoaded_ = true;
+        playersStale_ = stale;
+        onLobbyChanged();
 
-        Log.d(TAG, "setInitialPlayers: just loaded. Notify listeners-size:" + listeners_.size());
+        Log.d(TAG, "loadPlayers: just loaded (stale: " + stale + "). Notify listeners-size:"
+                + listeners_.size());
         for (EventListener listener : listeners_) {
             listener.onPlayersLoaded();
         }
     }
 
-    public void setTables(List<TableInfo> tables) {
+    /**
+     * Bring the stale players up to date with the new list, one change at a time,
+     * so that the list view moves just the rows that have changed.
+     */
+    private void reconcilePlayers(List<PlayerInfo> players) {
+        final Set<String> newPids = new HashSet<String>();
+        for (PlayerInfo player : players) {
+            newPids.add(player.pid);
+        }
+        for (PlayerInfo player : players_.toList()) {
+            if (!newPids.contains(player.pid)) {
+                players_.remove(player.pid);
+            }
+        }
+        for (PlayerInfo player : players) {
+            players_.put(player.pid, player.rating);
+        }
+    }
+
+    private void loadTables(List<TableInfo> tables, boolean stale) {
         tables_.clear();
         tables_.addAll(tables);
+        tablesById_.clear();
+        tableOfPlayer_.clear();
+        for (TableInfo table : tables_) {
+            tablesById_.put(table.tableId, table);
+            for (String pid : table.observers) {
+                tableOfPlayer_.put(pid, table.tableId);
+            }
+        }
+        for (TableInfo table : tables_) { // A seat wins over observing another table.
+            if (!isEmpty(table.redId)) tableOfPlayer_.put(table.redId, table.tableId);
+            if (!isEmpty(table.blackId)) tableOfPlayer_.put(table.blackId, table.tableId);
+        }
+        tableIndex_.setAll(tables_);
+        frozenTables_.clear();
         tablesLoaded_ = true;
+        tablesStale_ = stale;
+        onLobbyChanged();
 
-        Log.d(TAG, "setTables: just loaded. Notify listeners-size:" + listeners_.size());
+        Log.d(TAG, "loadTables: just loaded (stale: " + stale + "). Notify listeners-size:"
+                + listeners_.size());
         for (EventListener listener : listeners_) {
             listener.onTablesLoaded();
         }
     }
 
-    public void addPlayer(PlayerInfo playerInfo) {
-        players_.put(playerInfo.pid, playerInfo);
+    // (Not TextUtils.isEmpty(), which is not available in the unit tests.)
+    private static boolean isEmpty(String pid) {
+        return (pid == null || pid.length() == 0);
     }
 
-    public void removePlayer(String pid) {
-        players_.remove(pid);
+    private TableInfo getTableOfPlayer(String pid) {
+        final String tableId = tableOfPlayer_.get(pid);
+        return (tableId != null ? tablesById_.get(tableId) : null);
     }
 
-    public boolean arePlayersLoaded() {
-        return playersLoaded_;
+    private void onTableUpdated(TableInfo table) {
+        tableIndex_.update(table);
+        frozenTables_.remove(table.tableId);
+        for (EventListener listener : listeners_) {
+            listener.onTableUpdated(table);
+        }
     }
 
-    public String findTableOfPlayer(String pid) {
-        for (TableInfo table : tables_) {
-            if (pid.equals(table.redId) || pid.equals(table.blackId)) {
-                return table.tableId;
-            }
+    /**
+     * Note a change of the lobby. The snapshot is taken once the UI thread is done
+     * with the current batch of changes (e.g., a LIST, or the events of one read),
+     * rather than after each of them.
+     */
+    private void onLobbyChanged() {
+        ++version_;
+        if (!publishPending_) {
+            publishPending_ = true;
+            mainHandler_.post(publishTask_);
         }
-        return null;
     }
 
-    // ***************************************************************
-    //
-    //              Private APIs
-    //
-    // ***************************************************************
+    /**
+     * @return A new snapshot of the lobby. Its lists and maps are built anew, but the
+     *         frozen players and tables unchanged since the last snapshot are reused.
+     */
+    private LobbySnapshot takeSnapshot() {
+        final List<PlayerInfo> players = new ArrayList<PlayerInfo>(players_.size());
+        final Map<String, PlayerInfo> frozenPlayers = new HashMap<String, PlayerInfo>();
+        for (int i = 0; i < players_.size(); ++i) {
+            final PlayerInfo player = players_.get(i);
+            PlayerInfo frozen = frozenPlayers_.get(player.pid);
+            if (frozen == null) {
+                frozen = new PlayerInfo(player.pid, player.rating);
+            }
+            frozenPlayers.put(frozen.pid, frozen);
+            players.add(frozen);
+        }
 
+        final List<TableInfo> tables = new ArrayList<TableInfo>(tables_.size());
+        final Map<String, TableInfo> frozenTables = new HashMap<String, TableInfo>();
+        for (TableInfo table : tables_) {
+            TableInfo frozen = frozenTables_.get(table.tableId);
+            if (frozen == null) {
+                frozen = table.frozenCopy();
+            }
+            frozenTables.put(frozen.tableId, frozen);
+            tables.add(frozen);
+        }
 
+        frozenPlayers_ = frozenPlayers;
+        frozenTables_ = frozenTables;
+        return new LobbySnapshot(version_, players, tables,
+                new HashMap<String, String>(tableOfPlayer_));
+    }
 }
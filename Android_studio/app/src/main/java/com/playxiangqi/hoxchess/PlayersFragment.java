@@ -18,22 +18,19 @@
  */
 package com.playxiangqi.hoxchess;
 
-import android.app.Activity;
 import android.content.Context;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v7.widget.DefaultItemAnimator;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.BaseAdapter;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 public class PlayersFragment extends Fragment {
@@ -44,7 +41,12 @@ public class PlayersFragment extends Fragment {
     private OnFragmentInteractionListener listener_;
 
     private View inProgressView_;
-    private ListView playersListView_;
+    private RecyclerView playersListView_;
+
+    // The players to show: my own list (e.g., the players in a table), unless
+    // a shared one is given by showPlayers().
+    private final SortedPlayerList myPlayers_ = new SortedPlayerList();
+    private SortedPlayerList players_ = myPlayers_;
 
     private PlayersAdapter adapter_;
 
@@ -88,30 +90,13 @@ public class PlayersFragment extends Fragment {
         final View view = inflater.inflate(R.layout.fragment_players_in_table, container, false);
 
         inProgressView_ = view.findViewById(R.id.inProgressLayout);
-        playersListView_ = (ListView)view.findViewById(R.id.list_players);
+        playersListView_ = (RecyclerView) view.findViewById(R.id.list_players);
 
-        adapter_ = new PlayersAdapter(getActivity(), R.layout.listview_item_player);
+        adapter_ = new PlayersAdapter(players_);
+        playersListView_.setLayoutManager(new LinearLayoutManager(getActivity()));
+        playersListView_.setItemAnimator(new DefaultItemAnimator());
         playersListView_.setAdapter(adapter_);
 
-        playersListView_.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                PlayerInfo playerInfo = (PlayerInfo) playersListView_.getItemAtPosition(position);
-                Log.d(TAG, "onItemClick: View:" + view + ", Position:" + position + " pid: " + playerInfo.pid
-                        + ", ListItem: " + playerInfo);
-
-                // Note: I don't know of a better way to get table ID.
-                String tableId = null;
-                ViewHolder holder = (ViewHolder) view.getTag();
-                if (holder != null) {
-                    tableId = holder.tableIdView.getText().toString();
-                    Log.d(TAG, "onItemClick: tableId = [" + tableId + "]");
-                }
-
-                handlePlayerClickEvent(playerInfo, tableId);
-            }
-        });
-
         // Empty initially.
         inProgressView_.setVisibility(View.GONE);
         playersListView_.setVisibility(View.VISIBLE);
@@ -120,7 +105,9 @@ public class PlayersFragment extends Fragment {
         return view;
     }
 
-    private void handlePlayerClickEvent(PlayerInfo playerInfo, String tableId) {
+    private void handlePlayerClickEvent(PlayerInfo playerInfo) {
+        final String tableId = PlayerManager.getInstance().findTableOfPlayer(playerInfo.pid);
+        Log.d(TAG, "handlePlayerClickEvent: pid: " + playerInfo.pid + ", tableId = [" + tableId + "]");
         listener_.onPlayerClick(playerInfo, tableId);
     }
 
@@ -150,19 +137,29 @@ public class PlayersFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         if (DEBUG_LIFE_CYCLE) Log.v(TAG, "onDestroyView");
+        adapter_.release();
         listener_.onPlayersFragment_DestroyView(this);
     }
 
+    /**
+     * Show a list maintained elsewhere (e.g., all the online players) instead of my own.
+     * The view then follows its changes, and refreshPlayersIfNeeded() does not copy it.
+     */
+    public void showPlayers(SortedPlayerList players) {
+        players_ = players;
+        adapter_.setPlayers(players);
+    }
+
     public void clearAll() {
-        adapter_.clearAll();
+        myPlayers_.clear();
     }
 
-    public void onPlayerJoin(String pid, String rating, Enums.ColorEnum playerColor) {
-        adapter_.addPlayer(pid, rating);
+    public void onPlayerJoin(String pid, int rating, Enums.ColorEnum playerColor) {
+        myPlayers_.put(pid, rating);
     }
 
     public void onPlayerLeave(String pid) {
-        adapter_.removePlayer(pid);
+        myPlayers_.remove(pid);
     }
 
     public boolean refreshPlayersIfNeeded() {
@@ -171,8 +168,12 @@ public class PlayersFragment extends Fragment {
             playersListView_.setVisibility(View.VISIBLE);
         }
 
-        List<PlayerInfo> players = listener_.onRequestToRefreshPlayers();
-        adapter_.refreshPlayers(players);
+        if (players_ == myPlayers_) {
+            List<PlayerInfo> players = listener_.onRequestToRefreshPlayers();
+            myPlayers_.setAll(players);
+        } else {
+            adapter_.notifyDataSetChanged(); // The tables of the players may have changed.
+        }
         return true;
     }
 
@@ -189,116 +190,99 @@ public class PlayersFragment extends Fragment {
     }
 
     /**
-     * The custom adapter for our list view.
+     * The adapter for our list view. It follows the changes of the players row by row.
      */
-    private static class PlayersAdapter extends BaseAdapter {
-        private final Activity activity_;
-        private final int resourceId_;
-        private final List<PlayerInfo> players_ = new ArrayList<PlayerInfo>();
-
-        public PlayersAdapter(Activity context, int textViewResourceId) {
-            activity_ = context;
-            resourceId_ = textViewResourceId;
+    private class PlayersAdapter extends RecyclerView.Adapter<PlayersAdapter.ViewHolder>
+            implements SortedPlayerList.Listener {
+
+        private SortedPlayerList players_;
+
+        public class ViewHolder extends RecyclerView.ViewHolder {
+            public TextView playerIdView;
+            public TextView playerRatingView;
+            public TextView tableIdView;
+
+            public ViewHolder(View view) {
+                super(view);
+                playerIdView = (TextView) view.findViewById(R.id.player_id);
+                playerRatingView = (TextView) view.findViewById(R.id.player_rating);
+                tableIdView = (TextView) view.findViewById(R.id.table_id);
+
+                view.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        final int position = getAdapterPosition();
+                        if (position != RecyclerView.NO_POSITION) {
+                            handlePlayerClickEvent(players_.get(position));
+                        }
+                    }
+                });
+            }
         }
 
-        public void refreshPlayers(List<PlayerInfo> newPlayers) {
-            players_.clear();
-            players_.addAll(newPlayers);
-            notifyDataSetChanged();
+        public PlayersAdapter(SortedPlayerList players) {
+            players_ = players;
+            players_.addListener(this);
         }
 
-        public void clearAll() {
-            if (!players_.isEmpty()) {
-                players_.clear();
-                notifyDataSetChanged();
-            }
+        public void setPlayers(SortedPlayerList players) {
+            if (players == players_) return;
+            players_.removeListener(this);
+            players_ = players;
+            players_.addListener(this);
+            notifyDataSetChanged();
         }
 
-        public void addPlayer(String pid, String rating) {
-            PlayerInfo foundPlayer = null;
-            for (PlayerInfo player : players_) {
-                if (player.hasPid(pid)) {
-                    foundPlayer = player;
-                    break;
-                }
-            }
+        public void release() {
+            players_.removeListener(this);
+        }
 
-            if (foundPlayer != null) {
-                foundPlayer.rating = rating;
-            } else {
-                players_.add(new PlayerInfo(pid, rating));
-            }
-            notifyDataSetChanged();
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View itemView = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.listview_item_player, parent, false);
+            return new ViewHolder(itemView);
         }
 
-        public void removePlayer(String pid) {
-            Iterator<PlayerInfo> iterator = players_.iterator();
-            while (iterator.hasNext()) {
-                PlayerInfo player = iterator.next();
-                if (player.hasPid(pid)) {
-                    iterator.remove();
-                    notifyDataSetChanged();
-                    break;
-                }
-            }
+        @Override
+        public void onBindViewHolder(ViewHolder holder, int position) {
+            final PlayerInfo playerInfo = players_.get(position);
+            holder.playerIdView.setText(playerInfo.pid);
+            holder.playerRatingView.setText(String.valueOf(playerInfo.rating));
+
+            final String playerTable = PlayerManager.getInstance().findTableOfPlayer(playerInfo.pid);
+            holder.tableIdView.setText(TextUtils.isEmpty(playerTable) ? "" : playerTable);
         }
 
         @Override
-        public int getCount() {
-            //Log.d(TAG, "getCount: count = " + players_.size());
+        public int getItemCount() {
             return players_.size();
         }
 
+        // **** Implements SortedPlayerList.Listener ***
         @Override
-        public Object getItem(int position) {
-            return players_.get(position);
+        public void onPlayerInserted(int position) {
+            notifyItemInserted(position);
         }
 
         @Override
-        public long getItemId(int position) {
-            return position;
+        public void onPlayerRemoved(int position) {
+            notifyItemRemoved(position);
         }
 
         @Override
-        public boolean hasStableIds() {
-            return true;
+        public void onPlayerMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition, toPosition);
         }
 
         @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            //Log.d(TAG, "getView: position = " + position + ", count = " + getCount());
-            ViewHolder holder;
-            if (convertView == null) {
-                LayoutInflater layoutInflater = activity_.getLayoutInflater();
-                convertView = layoutInflater.inflate(resourceId_, null);
-                holder = new ViewHolder();
-                holder.playerIdView = (TextView) convertView.findViewById(R.id.player_id);
-                holder.playerRatingView = (TextView) convertView.findViewById(R.id.player_rating);
-                holder.tableIdView = (TextView) convertView.findViewById(R.id.table_id);
-
-                convertView.setTag(holder);
-            } else {
-                holder = (ViewHolder) convertView.getTag();
-            }
-
-            final PlayerInfo playerInfo = (PlayerInfo) getItem(position);
-            holder.playerIdView.setText(playerInfo.pid);
-            holder.playerRatingView.setText(playerInfo.rating);
-
-            final String playerTable = PlayerManager.getInstance().findTableOfPlayer(playerInfo.pid);
-            holder.tableIdView.setText(TextUtils.isEmpty(playerTable) ? "" : playerTable);
-
-            return convertView;
+        public void onPlayerChanged(int position) {
+            notifyItemChanged(position);
         }
 
-    }
-
-    /**
-     * The view holder for our custom adapter.
-     */
-    private static class ViewHolder {
-        public TextView playerIdView;
-        public TextView playerRatingView;
-        public TextView tableIdView;
+        @Override
+        public void onPlayersReset() {
+            notifyDataSetChanged();
+        }
     }
 }
@@ -0,0 +1,165 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An estimate of the network delay to the server, NTP style, measured on the requests
+ * that the server answers directly (e.g., LIST, PLAYER_INFO) over the existing connection.
+ *
+ * The protocol has no time stamp from the server, so the offset between an event on the
+ * server and its arrival here is taken to be half the round trip (as NTP does for
+ * a symmetric path). Of the last round trips, the shortest is used (NTP's clock filter):
+ * the longer ones include some queueing in the network or in the server.
+ *
+ * Thread-safe: the round trips are measured on the network thread.
+ */
+public class ServerClock {
+
+    private static final String TAG = "ServerClock";
+
+    private static final int WINDOW_SIZE = 8;            // The number of round trips kept.
+    private static final long MAX_ROUND_TRIP_MS = 10000; // Longer: not an answer to the request.
+
+    // The requests answered by the server to the sender only: request op => reply op.
+    private static final Map<String, String> REPLY_OPS = new HashMap<String, String>();
+    static {
+        REPLY_OPS.put("LIST", "LIST");
+        REPLY_OPS.put("PLAYER_INFO", "PLAYER_INFO");
+        REPLY_OPS.put("JOIN", "I_TABLE");
+        REPLY_OPS.put("NEW", "I_TABLE");
+    }
+
+    // The singleton instance, created eagerly: it is used from the network and the main threads.
+    private static final ServerClock instance_ = new ServerClock();
+
+    private final Map<String, Long> pendingRequests_ = new HashMap<String, Long>(); // reply op => sent time
+    private final long[] roundTrips_ = new long[WINDOW_SIZE]; // In milliseconds.
+    private int roundTripCount_ = 0;
+    private int nextRoundTrip_ = 0;
+    private long bestRoundTrip_ = 0; // The shortest round trip in the window.
+
+    /**
+     * Singleton API to return the instance.
+     */
+    public static ServerClock getInstance() {
+        return instance_;
+    }
+
+    // ***************************************************************
+    //
+    //              Public APIs
+    //
+    // ***************************************************************
+
+    /**
+     * @return The estimated round trip to the server (0 if not known yet).
+     */
+    public synchronized long getRoundTripMillis() {
+        return bestRoundTrip_;
+    }
+
+    /**
+     * @return How long ago an event just received happened on the server (0 if not known yet).
+     */
+    public long getOneWayDelayMillis() {
+        return getRoundTripMillis() / 2;
+    }
+
+    /**
+     * Called (on the network thread) when a request is written to the connection.
+     *
+     * @param sentNanos The time (System.nanoTime()) when the request was sent.
+     */
+    synchronized void onRequestSent(String request, long sentNanos) {
+        final String replyOp = REPLY_OPS.get(getOp(request));
+        if (replyOp == null) return;
+        final Long pendingNanos = pendingRequests_.get(replyOp);
+        if (pendingNanos == null || isTooOld(pendingNanos, sentNanos)) {
+            pendingRequests_.put(replyOp, sentNanos); // Measure from the first request pending.
+        }
+    }
+
+    /**
+     * Called (on the network thread) for each event received from the server.
+     *
+     * @param receivedNanos The time (System.nanoTime()) when the event was read.
+     */
+    synchronized void onEventReceived(String event, long receivedNanos) {
+        final String op = getOp(event);
+        if (op == null) return;
+
+        final Long sentNanos = pendingRequests_.remove(op);
+        if (sentNanos == null) {
+            // An error (e.g., JOIN failed) comes back with the op of the request.
+            final String replyOp = REPLY_OPS.get(op);
+            if (replyOp != null) {
+                pendingRequests_.remove(replyOp);
+            }
+            return;
+        }
+        if (isTooOld(sentNanos, receivedNanos)) return;
+
+        final long roundTripMillis = (receivedNanos - sentNanos) / 1000000L;
+        addRoundTrip(roundTripMillis);
+        Log.d(TAG, "Round trip (" + op + "): " + roundTripMillis + " ms, best: " + bestRoundTrip_ + " ms");
+    }
+
+    /**
+     * Forget the requests in flight (e.g., when the connection is closed).
+     * The round trips measured so far are kept for the next connection.
+     */
+    synchronized void onDisconnected() {
+        pendingRequests_.clear();
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    private void addRoundTrip(long roundTripMillis) {
+        roundTrips_[nextRoundTrip_] = roundTripMillis;
+        nextRoundTrip_ = (nextRoundTrip_ + 1) % WINDOW_SIZE;
+        if (roundTripCount_ < WINDOW_SIZE) ++roundTripCount_;
+
+        bestRoundTrip_ = Long.MAX_VALUE;
+        for (int i = 0; i < roundTripCount_; ++i) {
+            bestRoundTrip_ = Math.min(bestRoundTrip_, roundTrips_[i]);
+        }
+    }
+
+    private static boolean isTooOld(long sentNanos, long nowNanos) {
+        return (nowNanos - sentNanos) / 1000000L > MAX_ROUND_TRIP_MS;
+    }
+
+    /**
+     * @return The op of a request or an event ("op=LIST&..." => "LIST"), or null.
+     */
+    static String getOp(String message) {
+        if (!message.startsWith("op=")) return null;
+        final int end = message.indexOf('&');
+        return message.substring(3, (end < 0 ? message.length() : end));
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A list of players ordered by rating (the highest first), then by pid.
+ *
+ * The position of a player is found by a binary search, and each change is reported
+ * to the listeners with the positions involved, so that a list view can update
+ * just the rows that changed.
+ */
+public class SortedPlayerList {
+
+    private static final Comparator<PlayerInfo> ORDER = new Comparator<PlayerInfo>() {
+        @Override
+        public int compare(PlayerInfo p1, PlayerInfo p2) {
+            if (p1.rating != p2.rating) return (p1.rating > p2.rating ? -1 : 1);
+            return p1.pid.compareTo(p2.pid);
+        }
+    };
+
+    private final List<PlayerInfo> players_ = new ArrayList<PlayerInfo>(); // In ORDER.
+    private final Map<String, PlayerInfo> playersByPid_ = new HashMap<String, PlayerInfo>();
+
+    // *************************************************************************************
+    public interface Listener {
+        void onPlayerInserted(int position);
+        void onPlayerRemoved(int position);
+        void onPlayerMoved(int fromPosition, int toPosition); // The rating has changed.
+        void onPlayerChanged(int position);
+        void onPlayersReset();
+    }
+    private Set<Listener> listeners_ = new HashSet<Listener>();
+
+    public void addListener(Listener listener) {
+        listeners_.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners_.remove(listener);
+    }
+
+    // *************************************************************************************
+
+    public int size() {
+        return players_.size();
+    }
+
+    public PlayerInfo get(int position) {
+        return players_.get(position);
+    }
+
+    public PlayerInfo find(String pid) {
+        return playersByPid_.get(pid);
+    }
+
+    /**
+     * @return The position of the player, or -1 if not found.
+     */
+    public int indexOf(String pid) {
+        final PlayerInfo player = playersByPid_.get(pid);
+        return (player != null ? Collections.binarySearch(players_, player, ORDER) : -1);
+    }
+
+    public List<PlayerInfo> toList() {
+        return new ArrayList<PlayerInfo>(players_);
+    }
+
+    public void setAll(Collection<PlayerInfo> players) {
+        players_.clear();
+        playersByPid_.clear();
+        for (PlayerInfo player : players) {
+            if (playersByPid_.put(player.pid, player) == null) {
+                players_.add(player);
+            }
+        }
+        Collections.sort(players_, ORDER);
+        for (Listener listener : listeners_) {
+            listener.onPlayersReset();
+        }
+    }
+
+    public void clear() {
+        if (players_.isEmpty()) return;
+        players_.clear();
+        playersByPid_.clear();
+        for (Listener listener : listeners_) {
+            listener.onPlayersReset();
+        }
+    }
+
+    /**
+     * Add a player, or change the rating of the player already in the list.
+     */
+    public void put(String pid, int rating) {
+        PlayerInfo player = playersByPid_.get(pid);
+        if (player == null) {
+            player = new PlayerInfo(pid, rating);
+            playersByPid_.put(pid, player);
+            final int position = insertionPoint(player);
+            players_.add(position, player);
+            for (Listener listener : listeners_) {
+                listener.onPlayerInserted(position);
+            }
+            return;
+        }
+
+        if (rating == player.rating) return;
+        final int fromPosition = Collections.binarySearch(players_, player, ORDER);
+        players_.remove(fromPosition);
+        player.rating = rating;
+        final int toPosition = insertionPoint(player);
+        players_.add(toPosition, player);
+        for (Listener listener : listeners_) {
+            if (toPosition != fromPosition) {
+                listener.onPlayerMoved(fromPosition, toPosition);
+            }
+            listener.onPlayerChanged(toPosition);
+        }
+    }
+
+    public boolean remove(String pid) {
+        final PlayerInfo player = playersByPid_.remove(pid);
+        if (player == null) return false;
+        final int position = Collections.binarySearch(players_, player, ORDER);
+        players_.remove(position);
+        for (Listener listener : listeners_) {
+            listener.onPlayerRemoved(position);
+        }
+        return true;
+    }
+
+    /**
+     * Report a change of the player other than the rating (e.g., the table the player is in).
+     */
+    public void notifyChanged(String pid) {
+        final int position = indexOf(pid);
+        if (position < 0) return;
+        for (Listener listener : listeners_) {
+            listener.onPlayerChanged(position);
+        }
+    }
+
+    private int insertionPoint(PlayerInfo player) {
+        final int index = Collections.binarySearch(players_, player, ORDER);
+        return (index < 0 ? -index - 1 : index);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The symbol table of the short strings repeated all over the lobby: the player IDs,
+ * the table IDs and the initial times.
+ *
+ * Each event from the server is split into new strings, so the same pid would be kept
+ * once per PlayerInfo, TableInfo, MessageInfo... Interning keeps one canonical copy,
+ * which also turns equals() between two of them into an identity check.
+ * The symbols are held weakly: one no longer used anywhere is dropped.
+ */
+public final class Symbols {
+
+    private static final Map<String, WeakReference<String>> symbols_ =
+            new WeakHashMap<String, WeakReference<String>>();
+
+    private Symbols() {
+        // Not instantiated.
+    }
+
+    /**
+     * @return The canonical copy of the string (null if null).
+     */
+    public static synchronized String intern(String symbol) {
+        if (symbol == null) return null;
+        final WeakReference<String> ref = symbols_.get(symbol);
+        final String canonical = (ref != null ? ref.get() : null);
+        if (canonical != null) return canonical;
+        symbols_.put(symbol, new WeakReference<String>(symbol));
+        return symbol;
+    }
+}
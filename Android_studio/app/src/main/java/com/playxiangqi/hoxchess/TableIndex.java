@@ -0,0 +1,199 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index of the tables with an open seat, to find a game without going
+ * through the whole list.
+ *
+ * The tables are grouped by (open seat, initial times, rated), and each group
+ * is sorted by the rating of the opponent (the player in the other seat).
+ * Call update() whenever the seats of a table change.
+ */
+public class TableIndex {
+
+    /** The rating of the "opponent" at a table with both seats open. */
+    public static final int NO_OPPONENT = -1;
+
+    /**
+     * A query. A null field matches anything, and so does the default rating band.
+     */
+    public static class Query {
+        public Enums.ColorEnum openSeat; // RED, BLACK, or NONE for either of them.
+        public String itimes;            // e.g. "900/180/20"
+        public Boolean rated;
+        public int minRating = NO_OPPONENT; // of the opponent, inclusive
+        public int maxRating = Integer.MAX_VALUE;
+
+        public Query(Enums.ColorEnum openSeat) {
+            this.openSeat = openSeat;
+        }
+
+        /** Only the tables with an opponent rated in [minRating, maxRating]. */
+        public Query withRatingBand(int minRating, int maxRating) {
+            this.minRating = minRating;
+            this.maxRating = maxRating;
+            return this;
+        }
+    }
+
+    // A group of tables: opponent-rating => tables (in the order they were indexed).
+    private static class Group {
+        final Enums.ColorEnum openSeat;
+        final String itimes;
+        final boolean rated;
+        final TreeMap<Integer, Set<TableInfo>> byRating = new TreeMap<Integer, Set<TableInfo>>();
+
+        Group(Enums.ColorEnum openSeat, String itimes, boolean rated) {
+            this.openSeat = openSeat;
+            this.itimes = itimes;
+            this.rated = rated;
+        }
+
+        boolean matches(Query query) {
+            return (query.openSeat == Enums.ColorEnum.COLOR_NONE || query.openSeat == openSeat)
+                    && (query.itimes == null || query.itimes.equals(itimes))
+                    && (query.rated == null || query.rated == rated);
+        }
+    }
+
+    // Where a table is indexed (at most once per open seat).
+    private static class Entry {
+        final Group group;
+        final int rating;
+
+        Entry(Group group, int rating) {
+            this.group = group;
+            this.rating = rating;
+        }
+    }
+
+    private final Map<String, Group> groups_ = new HashMap<String, Group>(); // by "seat|itimes|rated"
+    private final Map<String, List<Entry>> entries_ = new HashMap<String, List<Entry>>(); // by table ID
+
+    // ***************************************************************
+    //
+    //              Public APIs
+    //
+    // ***************************************************************
+
+    public void clear() {
+        groups_.clear();
+        entries_.clear();
+    }
+
+    public void setAll(Collection<TableInfo> tables) {
+        clear();
+        for (TableInfo table : tables) {
+            add(table);
+        }
+    }
+
+    /**
+     * Index the table again, after its seats (or their ratings) have changed.
+     */
+    public void update(TableInfo table) {
+        remove(table);
+        add(table);
+    }
+
+    public void remove(TableInfo table) {
+        final List<Entry> entries = entries_.remove(table.tableId);
+        if (entries == null) return;
+        for (Entry entry : entries) {
+            final Set<TableInfo> tables = entry.group.byRating.get(entry.rating);
+            tables.remove(table);
+            if (tables.isEmpty()) {
+                entry.group.byRating.remove(entry.rating);
+            }
+        }
+    }
+
+    /**
+     * @return The matching tables, by the rating of the opponent (lowest first)
+     *         within each group.
+     */
+    public List<TableInfo> find(Query query) {
+        final Set<TableInfo> result = new LinkedHashSet<TableInfo>(); // A table may have both seats open.
+        if (query.minRating > query.maxRating) {
+            return new ArrayList<TableInfo>();
+        }
+        for (Group group : groups_.values()) {
+            if (!group.matches(query)) continue;
+            for (Set<TableInfo> tables
+                    : group.byRating.subMap(query.minRating, true, query.maxRating, true).values()) {
+                result.addAll(tables);
+            }
+        }
+        return new ArrayList<TableInfo>(result);
+    }
+
+    // ***************************************************************
+    //
+    //              Private APIs
+    //
+    // ***************************************************************
+
+    private void add(TableInfo table) {
+        final boolean redOpen = isEmpty(table.redId);
+        final boolean blackOpen = isEmpty(table.blackId);
+        if (!redOpen && !blackOpen) return; // Nothing to find here.
+
+        final List<Entry> entries = new ArrayList<Entry>(2);
+        if (redOpen) {
+            final int rating = (blackOpen ? NO_OPPONENT : table.blackRating);
+            entries.add(addToGroup(table, Enums.ColorEnum.COLOR_RED, rating));
+        }
+        if (blackOpen) {
+            final int rating = (redOpen ? NO_OPPONENT : table.redRating);
+            entries.add(addToGroup(table, Enums.ColorEnum.COLOR_BLACK, rating));
+        }
+        entries_.put(table.tableId, entries);
+    }
+
+    private Entry addToGroup(TableInfo table, Enums.ColorEnum openSeat, int rating) {
+        final String key = openSeat + "|" + table.itimes + "|" + table.rated;
+        Group group = groups_.get(key);
+        if (group == null) {
+            group = new Group(openSeat, table.itimes, table.rated);
+            groups_.put(key, group);
+        }
+        Set<TableInfo> tables = group.byRating.get(rating);
+        if (tables == null) {
+            tables = new LinkedHashSet<TableInfo>();
+            group.byRating.put(rating, tables);
+        }
+        tables.add(table);
+        return new Entry(group, rating);
+    }
+
+    // (Not TextUtils.isEmpty(), which is not available in the unit tests.)
+    private static boolean isEmpty(String pid) {
+        return (pid == null || pid.length() == 0);
+    }
+}
@@ -19,6 +19,7 @@
 package com.playxiangqi.hoxchess;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,10 +32,10 @@ public class TableInfo {
     public String itimes;   // Initial times.
     public String redTimes;
     public String blackTimes;
-    public String redId;
-    public String redRating;
+    public String redId;     // (The IDs and initial times are interned. See Symbols.)
+    public int redRating;
     public String blackId;
-    public String blackRating;
+    public int blackRating;
     public List<String> observers = new ArrayList<String>();
     
     public TableInfo() {
@@ -43,20 +44,39 @@ public class TableInfo {
     
     public TableInfo(String tableStr) {
         final String[] components = tableStr.split(";");        
-        tableId = components[0];
+        tableId = Symbols.intern(components[0]);
         rated = "0".equals(components[2]);
-        itimes = components[3];
+        itimes = Symbols.intern(components[3]);
         redTimes = components[4];
         blackTimes = components[5];
-        redId = components[6];
-        redRating = components[7];
-        blackId = components[8];
-        blackRating = components[9];
+        redId = Symbols.intern(components[6]);
+        redRating = Utils.parseRating(components[7]);
+        blackId = Symbols.intern(components[8]);
+        blackRating = Utils.parseRating(components[9]);
         for (int i = 10; i < components.length; ++i) {
-            observers.add(components[i]);
+            observers.add(Symbols.intern(components[i]));
         }
     }
 
+    /**
+     * @return A copy with its own read-only list of observers (the strings, which are
+     *         immutable, are shared with this table).
+     */
+    public TableInfo frozenCopy() {
+        TableInfo copy = new TableInfo();
+        copy.tableId = tableId;
+        copy.rated = rated;
+        copy.itimes = itimes;
+        copy.redTimes = redTimes;
+        copy.blackTimes = blackTimes;
+        copy.redId = redId;
+        copy.redRating = redRating;
+        copy.blackId = blackId;
+        copy.blackRating = blackRating;
+        copy.observers = Collections.unmodifiableList(new ArrayList<String>(observers));
+        return copy;
+    }
+
     public boolean isValid() {
         return (tableId != null);
     }
@@ -65,25 +85,31 @@ public class TableInfo {
         return (tableId != null && tableId.equals(tid));
     }
     
-    public void onPlayerJoined(String pid, String rating, Enums.ColorEnum playerColor) {
+    public void onPlayerJoined(String pid, int rating, Enums.ColorEnum playerColor) {
+        pid = Symbols.intern(pid);
         switch (playerColor) {
             case COLOR_BLACK:
                 blackId = pid;
                 blackRating = rating;
+                observers.remove(pid);
                 break;
  
             case COLOR_RED:
                 redId = pid;
                 redRating = rating;
+                observers.remove(pid);
                 break;
                 
             case COLOR_NONE:
                 if (pid.equals(blackId)) {
                     blackId = "";
-                    blackRating = "0";
+                    blackRating = 0;
                 } else if (pid.equals(redId)) {
                     redId = "";
-                    redRating = "0";
+                    redRating = 0;
+                }
+                if (!observers.contains(pid)) {
+                    observers.add(pid);
                 }
                 break;
                 
@@ -95,16 +121,16 @@ public class TableInfo {
     public void onPlayerLeft(String pid) {
         if (pid.equals(blackId)) {
             blackId = "";
-            blackRating = "0";
+            blackRating = 0;
         } else if (pid.equals(redId)) {
             redId = "";
-            redRating = "0";
+            redRating = 0;
         }
+        observers.remove(pid);
     }
     
-    public static String formatPlayerInfo(String pid, String rating) {
-        return (pid.length() == 0
-                ? "*" : String.format("%s(%s)", pid, rating));
+    public static String formatPlayerInfo(String pid, int rating) {
+        return PlayerInfo.formatPlayerInfo(pid, rating);
     }
     
     public String getRedInfo() {
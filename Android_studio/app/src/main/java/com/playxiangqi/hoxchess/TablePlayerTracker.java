@@ -104,18 +104,18 @@ public class TablePlayerTracker {
     //    return tableType_;
     //}
     
-    public void setBlackInfo(String pid, String rating) {
+    public void setBlackInfo(String pid, int rating) {
         blackPlayer_ = new PlayerInfo(pid, rating);
     }
 
-    public void setRedInfo(String pid, String rating) {
+    public void setRedInfo(String pid, int rating) {
         redPlayer_ = new PlayerInfo(pid, rating);
     }
 
     public void setObservers(List<String> observers) {
         observers_.clear();
         for (String pid : observers) {
-            observers_.put(pid, new PlayerInfo(pid, "0"));
+            observers_.put(pid, new PlayerInfo(pid, 0));
         }
     }
 
@@ -151,7 +151,7 @@ public class TablePlayerTracker {
         }
     }
     
-    public void onPlayerJoin(String pid, String rating, Enums.ColorEnum playerColor) {
+    public void onPlayerJoin(String pid, int rating, Enums.ColorEnum playerColor) {
         // Special case: The player left Red/Black seat.
         if (blackPlayer_.hasPid(pid)) {
             blackPlayer_ = new PlayerInfo();
@@ -179,7 +179,7 @@ public class TablePlayerTracker {
         }
     }
 
-    public void onPlayerRatingUpdate(String pid, String newRating) {
+    public void onPlayerRatingUpdate(String pid, int newRating) {
         if (blackPlayer_.hasPid(pid)) blackPlayer_.rating = newRating;
         else if (redPlayer_.hasPid(pid)) redPlayer_.rating = newRating;
         else {
@@ -18,53 +18,89 @@
  */
 package com.playxiangqi.hoxchess;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 import com.playxiangqi.hoxchess.Enums.ColorEnum;
 
-import android.annotation.SuppressLint;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.widget.TextView;
 
 /**
  * A table time tracker
+ *
+ * The clock ticks on the main thread, driven by the ClockScheduler shared by all trackers,
+ * when the second shown changes next. The ticks only refresh the views: the time left is
+ * computed (in milliseconds) from System.nanoTime() since the start of the current turn,
+ * so that a late tick does not make the clocks drift.
+ * A tick makes no garbage: the times are formatted into a buffer kept by each view,
+ * and a view is only set when the second it shows changes.
  */
-public class TableTimeTracker {
+public class TableTimeTracker implements ClockScheduler.Clock {
 
     private static final String TAG = "TableTimeTracker";
 
+    // A view showing a time (as "m:ss").
+    private static class TimeView {
+        TextView view;
+        char[] text = new char[24]; // Owned by the view once set (see TextView.setText(char[]...)).
+        long shownSeconds = -1;     // The time shown, to skip setting the same text again.
+
+        void set(TextView textView) {
+            view = textView;
+            shownSeconds = -1;
+        }
+
+        void show(long timeInMillis) {
+            final long timeInSeconds = toSeconds(timeInMillis);
+            if (timeInSeconds == shownSeconds) return;
+            shownSeconds = timeInSeconds;
+            view.setText(text, 0, formatTime(timeInSeconds, text));
+        }
+
+        void swapWith(TimeView other) {
+            final TextView view = this.view;
+            this.view = other.view;
+            other.view = view;
+            final char[] text = this.text; // The buffer goes along with its view.
+            this.text = other.text;
+            other.text = text;
+            this.shownSeconds = -1;
+            other.shownSeconds = -1;
+        }
+    }
+
     private boolean hasUI_ = false;
-    private TextView blackGameTimeView_;
-    private TextView blackMoveTimeView_;
-    private TextView redGameTimeView_;
-    private TextView redMoveTimeView_;
+    private final TimeView blackGameTimeView_ = new TimeView();
+    private final TimeView blackMoveTimeView_ = new TimeView();
+    private final TimeView redGameTimeView_ = new TimeView();
+    private final TimeView redMoveTimeView_ = new TimeView();
+
+    // The time left of a side, as of the start of the current turn (in milliseconds).
+    private static class SideTime {
+        long gameMillis;
+        long moveMillis;
+
+        void initWith(TimeInfo timeInfo) {
+            gameMillis = timeInfo.gameTime * 1000L;
+            moveMillis = timeInfo.moveTime * 1000L;
+        }
+
+        void consume(long elapsedMillis) {
+            gameMillis = Math.max(0, gameMillis - elapsedMillis);
+            moveMillis = Math.max(0, moveMillis - elapsedMillis);
+        }
+    }
 
     // Times.
     private TimeInfo initialTime_ = new TimeInfo(Enums.DEFAULT_INITIAL_GAME_TIMES);
-    private TimeInfo blackTime_ = new TimeInfo();
-    private TimeInfo redTime_ = new TimeInfo();
+    private final SideTime blackTime_ = new SideTime();
+    private final SideTime redTime_ = new SideTime();
     
     private ColorEnum nextColor_ = ColorEnum.COLOR_RED;
     
-    // Create timer to run in a daemon thread.
-    // TODO: Can we just use the option to run the timer directly in the UI thread?
-    private Timer myTimer_ = new Timer( true /* isDaemon */ );
-    
     private boolean isRunning = false;
+    private long turnStartNanos_; // When the clock of the current turn (re)started.
     
     public TableTimeTracker() {
         Log.d(TAG, "[CONSTRUCTOR]");
-        myTimer_.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (isRunning) {
-                    runTimerTask();
-                }
-            }
-        }, 0 /* no initial delay */, 1000 /* 1-second period */);
     }
     
     public void setUITextViews(
@@ -73,18 +109,18 @@ public class TableTimeTracker {
             TextView redGameTimeView,
             TextView redMoveTimeView) {
         
-        blackGameTimeView_ = blackGameTimeView;
-        blackMoveTimeView_ = blackMoveTimeView;
-        redGameTimeView_ = redGameTimeView;
-        redMoveTimeView_ = redMoveTimeView;
+        blackGameTimeView_.set(blackGameTimeView);
+        blackMoveTimeView_.set(blackMoveTimeView);
+        redGameTimeView_.set(redGameTimeView);
+        redMoveTimeView_.set(redMoveTimeView);
         hasUI_ = true;
     }
 
     public void unsetUITextViews() {
-        blackGameTimeView_ = null;
-        blackMoveTimeView_ = null;
-        redGameTimeView_ = null;
-        redMoveTimeView_ = null;
+        blackGameTimeView_.set(null);
+        blackMoveTimeView_.set(null);
+        redGameTimeView_.set(null);
+        redMoveTimeView_.set(null);
         hasUI_ = false;
     }
 
@@ -93,6 +129,7 @@ public class TableTimeTracker {
         
         blackTime_.initWith(initialTime_);
         redTime_.initWith(initialTime_);
+        turnStartNanos_ = System.nanoTime();
         
         // NOTE: We are in the main thread.
         //       Update the UI views directly.
@@ -108,18 +145,32 @@ public class TableTimeTracker {
         // NOTE: We are in the main thread.
         //       Update the UI views directly.
 
-        blackGameTimeView_.setText(formatTime(blackTime_.gameTime));
-        blackMoveTimeView_.setText(formatTime(blackTime_.moveTime));
-        redGameTimeView_.setText(formatTime(redTime_.gameTime));
-        redMoveTimeView_.setText(formatTime(redTime_.moveTime));
+        final long elapsedMillis = getElapsedMillis();
+        final long blackElapsed = (nextColor_ == ColorEnum.COLOR_BLACK ? elapsedMillis : 0);
+        final long redElapsed = (nextColor_ == ColorEnum.COLOR_RED ? elapsedMillis : 0);
+        blackGameTimeView_.show(blackTime_.gameMillis - blackElapsed);
+        blackMoveTimeView_.show(blackTime_.moveMillis - blackElapsed);
+        redGameTimeView_.show(redTime_.gameMillis - redElapsed);
+        redMoveTimeView_.show(redTime_.moveMillis - redElapsed);
     }
     
     public void setInitialColor(ColorEnum color) {
         Log.d(TAG, "Set the initial color:" + color);
+        consumeElapsedTime(0);
         nextColor_ = color;
     }
     
     public void nextColor() {
+        nextColor(0);
+    }
+    
+    /**
+     * @param lagMillis How long ago the turn changed (on the server), or, if negative,
+     *                  in how long it will.
+     */
+    public void nextColor(long lagMillis) {
+        consumeElapsedTime(lagMillis); // The time of the side that has just moved.
+
         final ColorEnum oldColor = nextColor_;
         nextColor_ = (nextColor_ == ColorEnum.COLOR_RED
                 ? ColorEnum.COLOR_BLACK : ColorEnum.COLOR_RED);
@@ -127,101 +178,171 @@ public class TableTimeTracker {
 
         // Reset the move time.
         if (nextColor_ == ColorEnum.COLOR_RED) {
-            redTime_.moveTime = initialTime_.moveTime;
+            redTime_.moveMillis = initialTime_.moveTime * 1000L;
         } else if (nextColor_ == ColorEnum.COLOR_BLACK) {
-            blackTime_.moveTime = initialTime_.moveTime;
+            blackTime_.moveMillis = initialTime_.moveTime * 1000L;
         }
     }
     
     public void start() {
+        start(0);
+    }
+    
+    /**
+     * @param lagMillis How long ago the clock started (on the server), or, if negative,
+     *                  in how long it will.
+     */
+    public void start(long lagMillis) {
         if (!isRunning) {
             Log.i(TAG, "Start counting down...");
             isRunning = true;
+            turnStartNanos_ = System.nanoTime() - lagMillis * 1000000L;
+            ClockScheduler.getInstance().startClock(this);
         }
     }
     
     public void stop() {
-        isRunning = false;
+        if (isRunning) {
+            consumeElapsedTime(0);
+            isRunning = false;
+            ClockScheduler.getInstance().stopClock(this);
+        }
     }
     
     public void setInitialTime(TimeInfo timeInfo) {
         initialTime_.initWith(timeInfo);
     }
     
+    /**
+     * Set the time left of Black (e.g., from the server), as of now.
+     */
     public void setBlackTime(TimeInfo timeInfo) {
+        consumeElapsedTime(0);
         blackTime_.initWith(timeInfo);
     }
     
+    /**
+     * Set the time left of Red (e.g., from the server), as of now.
+     */
     public void setRedTime(TimeInfo timeInfo) {
+        consumeElapsedTime(0);
         redTime_.initWith(timeInfo);
     }
 
     public void reverseView() {
-        TextView view = blackGameTimeView_;
-        blackGameTimeView_ = redGameTimeView_;
-        redGameTimeView_ = view;
-        
-        view = blackMoveTimeView_;
-        blackMoveTimeView_ = redMoveTimeView_;
-        redMoveTimeView_ = view;
+        blackGameTimeView_.swapWith(redGameTimeView_);
+        blackMoveTimeView_.swapWith(redMoveTimeView_);
     }
     
-    @SuppressLint("DefaultLocale")
-    private static String formatTime(int timeInSeconds) {
-        final int minutes = timeInSeconds / 60;
-        final int seconds = timeInSeconds % 60;
-        return String.format("%d:%02d", minutes, seconds);
+    /**
+     * @return In how long the current turn starts (after now, e.g., when my move
+     *         reaches the server), or 0.
+     */
+    private long getStartDelayMillis() {
+        return (isRunning ? Math.max(0, (turnStartNanos_ - System.nanoTime()) / 1000000L) : 0);
     }
-    
-    private Handler textViewUpdaterHandler_ = new Handler(Looper.getMainLooper());
-    
-    private class TextViewUpdater implements Runnable{
-        private ColorEnum uiColor_ = ColorEnum.COLOR_UNKNOWN;
-        private int uiGameTime_;
-        private int uiMoveTime_;
-        
-        @Override
-        public void run() {
-            if (!hasUI_) return;
-
-            if (uiColor_ == ColorEnum.COLOR_RED) {
-                redGameTimeView_.setText(formatTime(uiGameTime_));
-                redMoveTimeView_.setText(formatTime(uiMoveTime_));
-            } else if (uiColor_ == ColorEnum.COLOR_BLACK) {
-                blackGameTimeView_.setText(formatTime(uiGameTime_));
-                blackMoveTimeView_.setText(formatTime(uiMoveTime_));
-            }
+
+    /**
+     * @return The time of the current turn not yet counted in the side's time.
+     */
+    private long getElapsedMillis() {
+        // NOTE: The turn may start in the future (e.g., when my move reaches the server).
+        return (isRunning ? Math.max(0, (System.nanoTime() - turnStartNanos_) / 1000000L) : 0);
+    }
+
+    /**
+     * Count the time elapsed in the current turn in the time of the side to move, and
+     * restart the turn from then.
+     *
+     * @param lagMillis The turn ends that long before now (after now if negative).
+     */
+    private void consumeElapsedTime(long lagMillis) {
+        final long endNanos = System.nanoTime() - lagMillis * 1000000L;
+        if (!isRunning) return;
+        if (endNanos <= turnStartNanos_) { // The turn has not started yet.
+            turnStartNanos_ = endNanos;
+            return;
         }
-        
-        public void setNewTimes(ColorEnum color, int gameTime, int moveTime) {
-            uiColor_ = color;
-            uiGameTime_ = gameTime;
-            uiMoveTime_ = moveTime;
+
+        final long elapsedMillis = (endNanos - turnStartNanos_) / 1000000L;
+        if (nextColor_ == ColorEnum.COLOR_RED) {
+            redTime_.consume(elapsedMillis);
+        } else if (nextColor_ == ColorEnum.COLOR_BLACK) {
+            blackTime_.consume(elapsedMillis);
         }
+        // Restart from the instant measured (rather than from the end) to not lose a fraction.
+        turnStartNanos_ += elapsedMillis * 1000000L;
+    }
+
+    /**
+     * @return The time left rounded up to the second (so that "0:00" is shown only
+     *         once the time is over).
+     */
+    private static long toSeconds(long timeInMillis) {
+        return (Math.max(0, timeInMillis) + 999) / 1000;
+    }
+
+    /**
+     * @return In how long a running time shows the next second down (see toSeconds()),
+     *         or Long.MAX_VALUE if it is over.
+     */
+    private static long getMillisToNextSecond(long timeInMillis) {
+        return (timeInMillis > 0 ? (timeInMillis - 1) % 1000 + 1 : Long.MAX_VALUE);
+    }
 
+    /**
+     * Format the time as "m:ss" into a buffer (without String.format, which allocates).
+     *
+     * @return The length of the text.
+     */
+    static int formatTime(long timeInSeconds, char[] text) {
+        long minutes = timeInSeconds / 60;
+        final int seconds = (int) (timeInSeconds % 60);
+
+        int length = 0;
+        do { // The digits of the minutes, in reverse order.
+            text[length++] = (char) ('0' + minutes % 10);
+            minutes /= 10;
+        } while (minutes > 0);
+        for (int i = 0, j = length - 1; i < j; ++i, --j) {
+            final char c = text[i];
+            text[i] = text[j];
+            text[j] = c;
+        }
+        text[length++] = ':';
+        text[length++] = (char) ('0' + seconds / 10);
+        text[length++] = (char) ('0' + seconds % 10);
+        return length;
     }
     
-    private void runTimerTask() {
-        //Log.v(TAG, "Run a timer task...");
-        
-        TextViewUpdater textViewUpdater = new TextViewUpdater();
-        
+    // **** Implementation of ClockScheduler.Clock ****
+    @Override
+    public long onTick() {
+        //Log.v(TAG, "Tick...");
+
+        // NOTE: We are in the main thread.
+        //       Update the UI views directly.
+
+        if (!hasUI_) return Long.MAX_VALUE;
+
+        final long elapsedMillis = getElapsedMillis();
+        final SideTime time;
         if (nextColor_ == ColorEnum.COLOR_RED) {
-            redTime_.decrement();
-            textViewUpdater.setNewTimes(nextColor_, redTime_.gameTime, redTime_.moveTime);
-            
+            time = redTime_;
+            redGameTimeView_.show(time.gameMillis - elapsedMillis);
+            redMoveTimeView_.show(time.moveMillis - elapsedMillis);
         } else if (nextColor_ == ColorEnum.COLOR_BLACK) {
-            blackTime_.decrement();
-            textViewUpdater.setNewTimes(nextColor_, blackTime_.gameTime, blackTime_.moveTime);
-            
+            time = blackTime_;
+            blackGameTimeView_.show(time.gameMillis - elapsedMillis);
+            blackMoveTimeView_.show(time.moveMillis - elapsedMillis);
         } else {
-            return;
+            return Long.MAX_VALUE;
         }
-        
-        // NOTE: We are in a daemon thread.
-        //       Care must be taken to update UI elements (only the UI thread can do that).
-        
-        textViewUpdaterHandler_.post(textViewUpdater);
+
+        final long nextChangeMillis = Math.min(getMillisToNextSecond(time.gameMillis - elapsedMillis),
+                getMillisToNextSecond(time.moveMillis - elapsedMillis));
+        return (nextChangeMillis == Long.MAX_VALUE
+                ? nextChangeMillis : getStartDelayMillis() + nextChangeMillis);
     }
     
 }
@@ -19,8 +19,6 @@
 package com.playxiangqi.hoxchess;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 import android.app.Activity;
@@ -34,6 +32,7 @@ import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 
@@ -44,12 +43,16 @@ public class TablesActivity extends AppCompatActivity
 
     private static final String TAG = "TablesActivity";
 
+    private static final int OPEN_SEAT_RATING_BAND = 200; // +/- my rating
+
     private View inProgressView_;
     private ViewPager viewPager_;
 
     private WeakReference<TablesFragment> myTablesFragment_ = new WeakReference<TablesFragment>(null);
     private WeakReference<PlayersFragment> myPlayersFragment_ = new WeakReference<PlayersFragment>(null);
 
+    private TableIndex.Query tablesQuery_; // The tables to show (null = all of them).
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -65,7 +68,13 @@ public class TablesActivity extends AppCompatActivity
 
     @Override
     public void onPlayersLoaded() {
-        Log.d(TAG, "onPlayersLoaded: Do nothing.");
+        Log.d(TAG, "onPlayersLoaded:");
+        updateStaleMark();
+    }
+
+    @Override
+    public void onTableUpdated(TableInfo table) {
+        refreshTablesViewIfNeeded();
     }
 
     @Override
@@ -80,9 +89,8 @@ public class TablesActivity extends AppCompatActivity
     protected void onResume() {
         super.onResume();
         Log.d(TAG, "onResume:");
-        if (!refreshTablesViewIfNeeded()) {
-            PlayerManager.getInstance().addListener(this);
-        }
+        refreshTablesViewIfNeeded();
+        PlayerManager.getInstance().addListener(this); // Also to follow the seats of the tables.
     }
 
     @Override
@@ -90,6 +98,13 @@ public class TablesActivity extends AppCompatActivity
         super.onPause();
         Log.d(TAG, "onPause:");
         PlayerManager.getInstance().removeListener(this);
+        LobbyCache.getInstance().save();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.tables_activity_actions, menu);
+        return super.onCreateOptionsMenu(menu);
     }
 
     @Override
@@ -103,11 +118,32 @@ public class TablesActivity extends AppCompatActivity
             case android.R.id.home: // To handle the BACK button!
                 finish();
                 return true;
+            case R.id.action_open_seats_near_me:
+                item.setChecked(!item.isChecked());
+                showOpenSeatsNearMe(item.isChecked());
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
+    private void showOpenSeatsNearMe(boolean enabled) {
+        TableIndex.Query query = null;
+        if (enabled) {
+            final int myRating = Utils.parseRating(NetworkController.getInstance().getMyRating_());
+            query = new TableIndex.Query(Enums.ColorEnum.COLOR_NONE).withRatingBand(
+                    myRating - OPEN_SEAT_RATING_BAND, myRating + OPEN_SEAT_RATING_BAND);
+        }
+        Log.d(TAG, "showOpenSeatsNearMe: " + enabled);
+        tablesQuery_ = query;
+
+        TablesFragment tablesFragment = myTablesFragment_.get();
+        if (tablesFragment != null) {
+            tablesFragment.setQuery(query);
+        }
+        refreshTablesViewIfNeeded();
+    }
+
     private boolean refreshTablesViewIfNeeded() {
         if (!PlayerManager.getInstance().areTablesLoaded()) {
             //Log.d(TAG, "refreshTablesViewIfNeeded: The table LIST is not yet loaded.");
@@ -124,9 +160,20 @@ public class TablesActivity extends AppCompatActivity
             tablesFragment.refreshView();
         }
 
+        updateStaleMark();
         return true;
     }
 
+    /**
+     * Tell the user when the lists are the last known ones (e.g., from the previous session).
+     */
+    private void updateStaleMark() {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(PlayerManager.getInstance().isStale()
+                    ? getString(R.string.lobby_updating) : null);
+        }
+    }
+
     private boolean refreshPlayersViewIfNeeded() {
         if (!PlayerManager.getInstance().areTablesLoaded()) {
             //Log.d(TAG, "refreshPlayersViewIfNeeded: The table LIST is not yet loaded.");
@@ -152,6 +199,7 @@ public class TablesActivity extends AppCompatActivity
     @Override
     public void onTablesFragment_CreateView(TablesFragment fragment) {
         myTablesFragment_ = new WeakReference<TablesFragment>(fragment);
+        fragment.setQuery(tablesQuery_);
         refreshTablesViewIfNeeded();
     }
 
@@ -187,6 +235,7 @@ public class TablesActivity extends AppCompatActivity
     @Override
     public void onPlayersFragment_CreateView(PlayersFragment fragment) {
         myPlayersFragment_ = new WeakReference<PlayersFragment>(fragment);
+        fragment.showPlayers(PlayerManager.getInstance().getPlayers());
         refreshPlayersViewIfNeeded();
     }
 
@@ -207,14 +256,7 @@ public class TablesActivity extends AppCompatActivity
      */
     @Override
     public List<PlayerInfo> onRequestToRefreshPlayers() {
-        List<PlayerInfo> players = new ArrayList<PlayerInfo>();
-
-        HashMap<String, PlayerInfo> playersMap = PlayerManager.getInstance().getPlayers();
-        for (HashMap.Entry<String, PlayerInfo> entry : playersMap.entrySet()) {
-            players.add(entry.getValue());
-        }
-
-        return players;
+        return PlayerManager.getInstance().getPlayers().toList();
     }
 
     /**
@@ -140,6 +140,14 @@ public class TablesFragment extends Fragment {
         adapter_.refreshTables();
     }
 
+    /**
+     * Show only the tables matching the query (from the index), or all of them if null.
+     * Takes effect at the next refreshView().
+     */
+    public void setQuery(TableIndex.Query query) {
+        adapter_.setQuery(query);
+    }
+
     /**
      * The custom adapter for our list view.
      */
@@ -147,15 +155,22 @@ public class TablesFragment extends Fragment {
         private final Activity activity_;
         private final int resourceId_;
         private final List<TableInfo> tables_ = new ArrayList<TableInfo>();
+        private TableIndex.Query query_; // null: all tables
 
         public TablesAdapter(Activity context, int textViewResourceId) {
             activity_ = context;
             resourceId_ = textViewResourceId;
         }
 
+        public void setQuery(TableIndex.Query query) {
+            query_ = query;
+        }
+
         public void refreshTables() {
             tables_.clear();
-            final List<TableInfo> latestTables = PlayerManager.getInstance().getTables();
+            final List<TableInfo> latestTables = (query_ == null
+                    ? PlayerManager.getInstance().getTables()
+                    : PlayerManager.getInstance().findTables(query_));
             tables_.addAll(latestTables);
             notifyDataSetChanged();
         }
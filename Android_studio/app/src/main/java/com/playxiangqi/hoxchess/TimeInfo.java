@@ -45,9 +45,4 @@ public class TimeInfo {
         moveTime = other.moveTime;
         freeTime = other.freeTime;
     }
-    
-    public void decrement() {
-        if (gameTime > 0) --gameTime;
-        if (moveTime > 0) --moveTime;
-    }
 }
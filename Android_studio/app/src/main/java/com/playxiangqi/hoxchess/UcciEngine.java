@@ -0,0 +1,483 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An AI engine in its own process, which speaks UCCI over its stdin/stdout
+ * (e.g., MaxQi built as a standalone executable; see ./app/src/main/jni/MaxQiUcci.c).
+ *
+ * The process is started on the first use and kept for the following games. If it dies
+ * or does not answer in time, it is killed, and a new one is started on the next call.
+ * The moves of the game are kept here: each search sends the whole position and the
+ * "go" command in one write, and the engine plays only the moves that are new to it.
+ *
+ * To run the engine with its own limits (e.g., of memory), wrap its command line
+ * (e.g., "prlimit --as=... ./MaxQi").
+ *
+ * NOTE: Pondering is not supported, and analyze() gives one line at most.
+ */
+public class UcciEngine extends AIEngine {
+
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
+    private static final int STOP_TIMEOUT_MILLIS = 3000;
+    private static final int QUIT_TIMEOUT_MILLIS = 1000;
+
+    // Marks the end of the engine 's output in the queue of lines.
+    private static final String END_OF_OUTPUT = "\u0000";
+
+    private final List<String> command_;
+
+    private Process process_;
+    private Writer writer_;
+    private BlockingQueue<String> lines_;
+
+    private String name_ = "";
+    private String author_ = "";
+    private final Set<String> declaredOptions_ = new HashSet<String>();
+
+    // The options set so far (sent again to a new process).
+    private final Map<String, String> options_ = new LinkedHashMap<String, String>();
+
+    // The "go" command of each AI level. The default node budgets are those of MaxQi.
+    private final String[] levelCommands_ = {
+            "go nodes 60", "go nodes 15000", "go nodes 500000" };
+    private String goCommand_ = levelCommands_[0];
+    private int searchTimeoutMillis_ = 60000;
+
+    // The moves of the game, in the ICCS notation (e.g., "h2e2").
+    private final List<String> moves_ = new ArrayList<String>();
+
+    private SearchStats lastStats_ = new SearchStats(0, 0, 0, 0, 0, 0, "");
+
+    /**
+     * The outcome of a search: the best move (in the ICCS notation) and the statistics.
+     */
+    private static class SearchResult {
+        String bestMove;
+        SearchStats stats;
+    }
+
+    /**
+     * @param command The engine 's executable, followed by its arguments.
+     */
+    public UcciEngine(List<String> command) {
+        command_ = new ArrayList<String>(command);
+    }
+
+    /**
+     * Set the "go" command of an AI level (e.g., "go depth 8", "go time 60000 movestogo 40").
+     */
+    public void setLevelCommand(int aiLevel, String goCommand) {
+        levelCommands_[aiLevel] = goCommand;
+        if (aiLevel == getAILevel()) {
+            goCommand_ = goCommand;
+        }
+    }
+
+    /**
+     * @param millis How long to wait for a move before the engine is stopped.
+     */
+    public void setSearchTimeout(int millis) {
+        searchTimeoutMillis_ = millis;
+    }
+
+    /**
+     * Stop the engine 's process.
+     */
+    public void close() {
+        if (process_ == null) return;
+        send("quit");
+        waitFor("bye", QUIT_TIMEOUT_MILLIS, null, null);
+        kill();
+    }
+
+    // ****************************** AIEngine ************************************
+
+    @Override
+    public String getInfo() {
+        if (!ensureStarted()) return "";
+        return name_ + "\n" + author_;
+    }
+
+    @Override
+    public int setDifficultyLevel(int nAILevel) {
+        if (nAILevel < 0 || nAILevel >= levelCommands_.length) nAILevel = 0;
+        goCommand_ = levelCommands_[nAILevel];
+        return AI_RC_OK;
+    }
+
+    @Override
+    public int setRandomSeed(int seed) {
+        return setOption("randomseed", String.valueOf(seed));
+    }
+
+    @Override
+    public int initGame() {
+        moves_.clear();
+        return ensureStarted() ? AI_RC_OK : AI_RC_ERR;
+    }
+
+    @Override
+    public String generateMove() {
+        final SearchResult result = search(moves_, goCommand_, 0, true);
+        lastStats_ = result.stats;
+        if (result.bestMove == null) {
+            return "none";
+        }
+        moves_.add(result.bestMove);
+        return fromIccs(result.bestMove);
+    }
+
+    @Override
+    public int onHumanMove(int row1, int col1, int row2, int col2) {
+        moves_.add(toIccs(row1, col1, row2, col2));
+        return AI_RC_OK;
+    }
+
+    @Override
+    public int openBook(String bookPath) {
+        return setOption("bookfiles", bookPath);
+    }
+
+    @Override
+    public int openTablebases(String tablesDir) {
+        return setOption("egtbpaths", tablesDir);
+    }
+
+    @Override
+    public SearchStats getLastSearchStats() {
+        return lastStats_;
+    }
+
+    @Override
+    public List<AnalysisLine> analyze(String moves, int maxDepth,
+                                      int timeMillis, int multiPv) {
+        List<String> iccsMoves = new ArrayList<String>();
+        for (String move : moves.trim().split(" +")) {
+            if (move.length() == 0) continue;
+            if (!isAppMove(move)) return null;
+            iccsMoves.add(toIccs(move.charAt(0) - '0', move.charAt(1) - '0',
+                    move.charAt(2) - '0', move.charAt(3) - '0'));
+        }
+
+        final String goCommand = (maxDepth > 0 ? "go depth " + maxDepth : "go infinite");
+        final SearchResult result = search(iccsMoves, goCommand, timeMillis, false);
+        List<AnalysisLine> lines = new ArrayList<AnalysisLine>();
+        if (result.bestMove != null) {
+            final String move = fromIccs(result.bestMove);
+            final SearchStats stats = result.stats;
+            lines.add(new AnalysisLine(move, stats.score, stats.depth,
+                    stats.pv.startsWith(move) ? stats.pv : move));
+        }
+        return lines;
+    }
+
+    @Override
+    public int ponder() {
+        return AI_RC_NOT_SUPPORTED;
+    }
+
+    @Override
+    public int stopPonder(int row1, int col1, int row2, int col2) {
+        return AI_RC_NOT_FOUND;
+    }
+
+    // ****************************** The process *********************************
+
+    private boolean ensureStarted() {
+        if (process_ != null) {
+            try {
+                process_.exitValue();
+                kill(); // It has died.
+            } catch (IllegalThreadStateException e) {
+                return true; // Still running.
+            }
+        }
+
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command_);
+            builder.redirectErrorStream(true);
+            process_ = builder.start();
+            writer_ = new OutputStreamWriter(process_.getOutputStream(), "UTF-8");
+            lines_ = new LinkedBlockingQueue<String>();
+            startReader(new BufferedReader(
+                    new InputStreamReader(process_.getInputStream(), "UTF-8")), lines_);
+        } catch (IOException e) {
+            process_ = null;
+            return false;
+        }
+
+        declaredOptions_.clear();
+        send("ucci");
+        if (waitFor("ucciok", HANDSHAKE_TIMEOUT_MILLIS, null, null) == null) {
+            kill();
+            return false;
+        }
+        for (Map.Entry<String, String> option : options_.entrySet()) {
+            send("setoption " + option.getKey() + " " + option.getValue());
+        }
+        send("isready");
+        if (waitFor("readyok", HANDSHAKE_TIMEOUT_MILLIS, null, null) == null) {
+            kill();
+            return false;
+        }
+        return true;
+    }
+
+    private static void startReader(final BufferedReader reader,
+                                    final BlockingQueue<String> lines) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException e) {
+                    // The process is gone.
+                } finally {
+                    lines.add(END_OF_OUTPUT);
+                }
+            }
+        }, "UcciEngine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void kill() {
+        if (process_ != null) {
+            process_.destroy();
+            process_ = null;
+        }
+        writer_ = null;
+        lines_ = null;
+    }
+
+    private void send(String... commands) {
+        if (writer_ == null) return;
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (String command : commands) {
+                sb.append(command).append('\n');
+            }
+            writer_.write(sb.toString());
+            writer_.flush();
+        } catch (IOException e) {
+            kill();
+        }
+    }
+
+    private int setOption(String name, String value) {
+        if (!ensureStarted()) return AI_RC_ERR;
+        if (!declaredOptions_.contains(name)) return AI_RC_NOT_SUPPORTED;
+        options_.put(name, value);
+        send("setoption " + name + " " + value);
+        return AI_RC_OK;
+    }
+
+    /**
+     * Wait for a line that starts with the given word (the "id" and "option" lines
+     * are taken on the way, and the "info" lines are given to 'search').
+     *
+     * @return The line, or null if the time is up or the engine is gone.
+     */
+    private String waitFor(String word, long timeoutMillis,
+                           SearchInfo search, String otherWord) {
+        final long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        final BlockingQueue<String> lines = lines_;
+        if (lines == null) return null;
+
+        for (;;) {
+            final long nanos = deadline - System.nanoTime();
+            String line;
+            try {
+                line = (nanos > 0 ? lines.poll(nanos, TimeUnit.NANOSECONDS) : null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (line == null || line.equals(END_OF_OUTPUT)) return null;
+
+            final String first = (line.indexOf(' ') < 0 ? line
+                    : line.substring(0, line.indexOf(' ')));
+            if (first.equals(word) || first.equals(otherWord)) {
+                return line;
+            } else if (first.equals("info") && search != null) {
+                search.parse(line);
+            } else if (line.startsWith("id name ")) {
+                name_ = line.substring(8);
+            } else if (line.startsWith("id author ")) {
+                author_ = line.substring(10);
+            } else if (line.startsWith("option ")) {
+                final String[] fields = line.split(" ");
+                if (fields.length > 1) declaredOptions_.add(fields[1]);
+            }
+        }
+    }
+
+    // ****************************** Searching ***********************************
+
+    /**
+     * The "info" lines of a search.
+     */
+    private class SearchInfo {
+        final long startNanos = System.nanoTime();
+        final boolean report;
+        int depth;
+        int score;
+        int nodes;
+        int elapsedMillis = -1;
+        String pv = "";
+
+        SearchInfo(boolean report) {
+            this.report = report;
+        }
+
+        void parse(String line) {
+            final String[] fields = line.split(" ");
+            boolean hasDepth = false;
+            try {
+                for (int i = 1; i + 1 < fields.length; i++) {
+                    final String name = fields[i];
+                    if (name.equals("depth")) {
+                        depth = Integer.parseInt(fields[++i]);
+                        hasDepth = true;
+                    } else if (name.equals("score")) {
+                        score = Integer.parseInt(fields[++i]);
+                    } else if (name.equals("nodes")) {
+                        nodes = Integer.parseInt(fields[++i]);
+                    } else if (name.equals("time")) {
+                        elapsedMillis = Integer.parseInt(fields[++i]);
+                    } else if (name.equals("pv")) {
+                        StringBuilder sb = new StringBuilder();
+                        for (++i; i < fields.length; i++) {
+                            if (!isIccsMove(fields[i])) break;
+                            if (sb.length() > 0) sb.append(' ');
+                            sb.append(fromIccs(fields[i]));
+                        }
+                        pv = sb.toString();
+                    } else if (name.equals("string")) {
+                        break;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return; // Not the kind of "info" we know.
+            }
+            if (hasDepth && report) {
+                notifySearchProgress(toStats());
+            }
+        }
+
+        SearchStats toStats() {
+            final int millis = (elapsedMillis >= 0 ? elapsedMillis
+                    : (int) ((System.nanoTime() - startNanos) / 1000000));
+            return new SearchStats(depth, score, nodes, millis, 0, 0, pv);
+        }
+    }
+
+    /**
+     * Search the position after the given moves.
+     *
+     * @param stopAfterMillis If > 0, the search is stopped after this time.
+     * @param report Whether to report the progress to the search listener.
+     */
+    private SearchResult search(List<String> moves, String goCommand,
+                                int stopAfterMillis, boolean report) {
+        final SearchResult result = new SearchResult();
+        final SearchInfo info = new SearchInfo(report);
+        result.stats = info.toStats();
+        if (!ensureStarted()) return result;
+
+        StringBuilder position = new StringBuilder("position startpos");
+        if (!moves.isEmpty()) {
+            position.append(" moves");
+            for (String move : moves) {
+                position.append(' ').append(move);
+            }
+        }
+        send(position.toString(), goCommand);
+
+        String line = waitFor("bestmove", (stopAfterMillis > 0 ? stopAfterMillis
+                : searchTimeoutMillis_), info, "nobestmove");
+        if (line == null && process_ != null) {
+            send("stop");
+            line = waitFor("bestmove", STOP_TIMEOUT_MILLIS, info, "nobestmove");
+        }
+        if (line == null) {
+            kill(); // Not answering.
+            return result;
+        }
+
+        final String[] fields = line.split(" ");
+        if (fields[0].equals("bestmove") && fields.length > 1 && isIccsMove(fields[1])) {
+            result.bestMove = fields[1];
+            if (info.pv.length() == 0) info.pv = fromIccs(result.bestMove);
+        }
+        result.stats = info.toStats();
+        return result;
+    }
+
+    // ****************************** Notations ***********************************
+    //
+    // The App: "row,col,row,col" (e.g., "9081"), with Red on the row 9.
+    // ICCS: "file,rank,file,rank" (e.g., "a0b2"), with Red on the rank 0.
+
+    private static String toIccs(int row1, int col1, int row2, int col2) {
+        return new String(new char[] {
+                (char) ('a' + col1), (char) ('0' + 9 - row1),
+                (char) ('a' + col2), (char) ('0' + 9 - row2) });
+    }
+
+    private static String fromIccs(String move) {
+        return new String(new char[] {
+                (char) ('9' - move.charAt(1) + '0'), (char) (move.charAt(0) - 'a' + '0'),
+                (char) ('9' - move.charAt(3) + '0'), (char) (move.charAt(2) - 'a' + '0') });
+    }
+
+    private static boolean isIccsMove(String move) {
+        return move.length() == 4
+                && move.charAt(0) >= 'a' && move.charAt(0) <= 'i'
+                && move.charAt(1) >= '0' && move.charAt(1) <= '9'
+                && move.charAt(2) >= 'a' && move.charAt(2) <= 'i'
+                && move.charAt(3) >= '0' && move.charAt(3) <= '9';
+    }
+
+    private static boolean isAppMove(String move) {
+        return move.length() == 4
+                && move.charAt(0) >= '0' && move.charAt(0) <= '9'
+                && move.charAt(1) >= '0' && move.charAt(1) <= '8'
+                && move.charAt(2) >= '0' && move.charAt(2) <= '9'
+                && move.charAt(3) >= '0' && move.charAt(3) <= '8';
+    }
+}
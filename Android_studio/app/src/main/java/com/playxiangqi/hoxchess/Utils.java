@@ -74,6 +74,17 @@ public class Utils {
         return Enums.ColorEnum.COLOR_UNKNOWN;
     }
 
+    /**
+     * Converts a rating (e.g., "1500") from the server to an int, or 0 if malformed.
+     */
+    public static int parseRating(String rating) {
+        try {
+            return Integer.parseInt(rating);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * Converts a Orientation enum to a string.
      */
@@ -29,6 +29,8 @@ include $(CLEAR_VARS)
 LOCAL_MODULE := AI_MaxQi
 LOCAL_SRC_FILES := \
     MaxQi.c \
+    MaxQiBook.c \
+    MaxQiEgtb.c \
 
 # for logging
 LOCAL_LDLIBS += -llog
@@ -55,4 +57,25 @@ LOCAL_LDLIBS += -llog
 
 include $(BUILD_SHARED_LIBRARY)
 
+# -------------------------------------------------------
+#
+# The AI engine (MaxQi) as a standalone executable,
+# which speaks UCCI over stdin/stdout (see MaxQiUcci.c).
+#
+# -------------------------------------------------------
+include $(CLEAR_VARS)
+
+LOCAL_MODULE := MaxQi
+LOCAL_CFLAGS := -DMAXQI_UCCI
+LOCAL_SRC_FILES := \
+    MaxQiUcci.c \
+    MaxQi.c \
+    MaxQiBook.c \
+    MaxQiEgtb.c \
+
+# for logging
+LOCAL_LDLIBS += -llog
+
+include $(BUILD_EXECUTABLE)
+
 ################### End of file #############################
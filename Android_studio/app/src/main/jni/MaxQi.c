@@ -7,13 +7,23 @@
 
 // ******** Android NDK *****
 #include <string.h>
+#ifndef MAXQI_UCCI   /* the standalone UCCI engine (see MaxQiUcci.c) */
 #include <jni.h>
+#endif
+#ifdef __ANDROID__
 #include <android/log.h>
 
 #define  LOG_TAG    "libAI_MaxQi"
 #define  LOGI(...)  __android_log_print(ANDROID_LOG_INFO,LOG_TAG,__VA_ARGS__)
 #define  LOGW(...)  __android_log_print(ANDROID_LOG_WARN,LOG_TAG,__VA_ARGS__)
 #define  LOGE(...)  __android_log_print(ANDROID_LOG_ERROR,LOG_TAG,__VA_ARGS__)
+#else  /* a host build (e.g., for the self-play runner) */
+#include <stdio.h>
+
+#define  LOGI(...)  ((void) 0)
+#define  LOGW(...)  fprintf(stderr,__VA_ARGS__)
+#define  LOGE(...)  fprintf(stderr,__VA_ARGS__)
+#endif
 
 //
 // AI error codes (or Return-Codes).
@@ -28,6 +38,8 @@
 
 #include <stdio.h>
 #include <stdlib.h>
+#include "MaxQiBook.h"
+#include "MaxQiEgtb.h"
 
 #ifdef WIN32
 #include <windows.h>
@@ -43,6 +55,9 @@ int GetTickCount() // with thanks to Tord Romstad
 int Side;
 int Post = 0;           /* set to 1 to see machine thinking printed */
 int MaxDepth  = 60;     /* must be set 2 higher than actual depth!  */
+int MaxNodes  = 0;      /* no new iteration past it; 0 = no limit   */
+unsigned int FixedSeed; /* 0 = a new random seed for each session   */
+unsigned int RandomState = 1;
 int MaxTime   = 300000; /* Time per session, msec                   */
 int MaxMoves  = 40;     /* moves per session; 0 = entire game       */
 int TimeInc   = 0;      /* extra time per move in msec              */
@@ -50,7 +65,32 @@ int TimeLeft;
 int MovesLeft;
 int Fifty;
 int PlyNr;
-int Ticks, tlim;
+int Ticks;
+volatile int tlim;      /* may be cut short (e.g., "stop" in UCCI) */
+volatile int PonderFrom=-1, PonderTo=-1; /* predicted opponent move, -1 = none */
+int PonderBestFrom=-1, PonderBestTo; /* our prepared answer to it          */
+int PonderHit;                       /* opponent played the predicted move */
+volatile int Pondering;
+volatile int PonderAbort;            /* set by a miss, until the next search */
+int OutOfBook;          /* set once a position is not in the book   */
+int HashProbes,HashHits;/* hash table statistics of the last search */
+struct SearchStats {int depth,score,nodes,elapsed,probes,hits;char pv[128];} Stats;
+#ifndef MAXQI_UCCI
+JNIEnv *SearchEnv;      /* set while generateMove() runs, to report */
+jobject SearchThiz;     /*   the progress of each iteration to Java */
+#endif
+void RootIteration(int d,int m);
+void ReportProgress();  /* to Java, or as UCCI "info" (MaxQiUcci.c) */
+int Analyzing;          /* set while _Analyze() runs                */
+int NExcl,Excl[8][2];   /* root moves excluded (for multi-PV)       */
+int Excluded(int x,int y);
+int Ply;                /* distance from the root (for the killers) */
+int Killer[64][2];      /* 2 quiet moves (x<<8|y) per Ply that cut  */
+int History[144][144],HistoryMax;  /* quiet cut moves get +d*d     */
+int Pseudo(int k,int x,int y);
+int KingsFace();
+int KingEnPrise(int k);
+int Reduce(int x,int y);
 
 #define W while
 #define K(A,B) *(int*)(T+A+((B&31)<<8))
@@ -98,6 +138,20 @@ char zn[] = {                                  /* zones of xiangqi board   */
 1,1,1,1,1,2,2,2,2,2,    0,0,0,0,0,0
 };
 
+/* xorshift32: unlike rand(), the same numbers on every device. */
+void SeedRandom(unsigned int seed)
+{
+ RandomState = seed ? seed : 1;
+}
+
+int Random()
+{
+ RandomState ^= RandomState << 13;
+ RandomState ^= RandomState >> 17;
+ RandomState ^= RandomState << 5;
+ return RandomState >> 1;
+}
+
 void pboard()
 {int i;
  i=-1;W(++i<144)printf(" %c",(i&15)==10&&(i+=15-10)?10:n[b[i]&31]);
@@ -112,19 +166,29 @@ int D(int k,int q,int l,int e,int z,int n)
  int j,r,m,v,d,h,i,P,V,f=J,g=Z,C,s,flag,F;
  unsigned char t,p,u,x,y,X,Y,B,lu;
  struct _*a=A+(J+k&U-1);                       /* lookup pos. in hash table*/
+ if(!(z&S)&&KingsFace())return I;              /* the last move was illegal*/
+ HashProbes++;HashHits+=a->K==Z;               /* hash statistics          */
  q-=q<e;l-=l<=e;                               /* adj. window: delay bonus */
  d=a->D;m=a->V;F=a->F;                         /* resume at stored depth   */
  X=a->X;Y=a->Y;                                /* start at best-move hint  */
-if(z&S&&a->K==Z)printf("# root hit %d %d %x\n",a->D,a->V,a->F);
+if(Post&&z&S&&a->K==Z)printf("# root hit %d %d %x\n",a->D,a->V,a->F);
  if(a->K-Z|z&S  |                              /* miss: other pos. or empty*/
   !(m<=q|F&8&&m>=l|F&S))                       /*   or window incompatible */
   d=X=0,Y=-1;                                  /* start iter. from scratch */
+ Ply++;
+ if(Y==255&&!(z&S)&&(i=Killer[Ply&63][0])&&    /* no best-move hint: try   */
+  Pseudo(k,i>>8,i&255))X=i>>8,Y=i;             /*   the killer move first  */
  W(d++<n||d<3||              /*** min depth = 2   iterative deepening loop */
-   z&S&&K==I&&(GetTickCount()-Ticks<tlim&d<=MaxDepth|| /* root: deepen upto time   */
+   z&S&&K==I&&(GetTickCount()-Ticks<tlim&d<=MaxDepth&   /* root: deepen upto time  */
+   !(Pondering&PonderAbort)&                   /*   unless ponder missed  */
+   (!MaxNodes|N<MaxNodes)||                    /*   and node budget       */
    (K=X,L=Y,d=3)))                             /* time's up: go do best    */
  {x=B=X;lu=1;                                  /* start scan at prev. best */
   h=Y-255;                                       /* if move, request 1st try */
-  P=d>2&&l+I?D(16-k,-l,1-l,-e,2*S,d-3):I;      /* search null move         */
+  P=d<3|!(l+I)?I:                              /* search null move, but    */
+   z-2*S&&l<I-500&&                            /*  not twice in a row, nor */
+   !KingEnPrise(k)?D(16-k,-l,1-l,-e,2*S,d-3):  /*  vs. a mate, nor after an*/
+   I-1;                                        /*  illegal move (not chk)  */
   m=-P<l|R<5?d-2?-I:e:-P;   /*** prune if > beta  unconsidered:static eval */
   N++;                                         /* node count (for timing)  */
   do{u=b[x];                                   /* scan board looking for   */
@@ -146,6 +210,7 @@ if(z&S&&a->K==Z)printf("# root hit %d %d %x\n",a->D,a->V,a->F);
        if(i<0)m=I,d=98;                        /* K capture                */
        if(m>=l&d>1)goto C;                     /* abort on fail high       */
        v=d-1?e:i-p;                            /*** MVV/LVA scoring if d=1**/
+       if(z&S&&NExcl&&Excluded(x,y))v=-I;else  /* multi-PV: skip found move*/
        if(d-!t>1)                              /*** all captures if d=2  ***/
        {v=centr[p]?b[x+257]-b[y+257]:0;        /* center positional pts.   */
         b[x]=0;b[y]=u;                         /* do move                  */
@@ -155,10 +220,10 @@ if(z&S&&a->K==Z)printf("# root hit %d %d %x\n",a->D,a->V,a->F);
          if(zn[x]-zn[y])b[y]+=5,               /* upgrade Pawn and         */
           i+=w[p+5]-w[p];                      /*          promotion bonus */
         }
-        if(z&S && PlyNr<6) v+=(rand()>>10&31)-16; // randomize in root
+        if(z&S && PlyNr<6) v+=(Random()>>10&31)-16; // randomize in root
         J+=J(0);Z+=J(4);
         v+=e+i;V=m>q?m:q;                      /*** new eval & alpha    ****/
-        C=d-1-(d>5&p>2&!t&!h);                 /* nw depth, reduce non-cpt.*/
+        C=d-1-(d>Reduce(x,y)&p>2&!t&!h);       /* nw depth, reduce non-cpt.*/
         C=R<10|P-I|d<3||t&&p-3?C:d;            /* extend 1 ply if in-check */
         do
          s=C>2|v>V?-D(16-k,-l,-V,-v,/*** futility, recursive eval. of reply */
@@ -171,6 +236,7 @@ if(z&S&&a->K==Z)printf("# root hit %d %d %x\n",a->D,a->V,a->F);
           O=P;PlyNr++;
           R-=i>>7;                             /*** total captd material ***/
           Fifty = t|p<3?0:Fifty+1;
+          Ply--;
           return l;}                           /*   & not in check, signal */
          v=m;                                  /* (prevent fail-lows on    */
         }                                      /*   K-capt. replies)       */
@@ -191,27 +257,96 @@ if(z&S&&a->K==Z)printf("# root hit %d %d %x\n",a->D,a->V,a->F);
    if((++x&15)>=10)x=x+16&240,lu=1;            /* next sqr. of board, wrap */
    if(x>=16*9)x=0;
   }W(x-B);           
-C:if(a->D<99)                                  /* protect game history     */
+C:if(m>=l&d<98&Y<16*9&&-P<l&&!b[Y]&&b[X]&&(b[X]&16)==k) /* quiet cut:   */
+  {i=X<<8|Y;History[X][Y]+=d*d;                /*   remember the move     */
+   if(History[X][Y]>HistoryMax)HistoryMax=History[X][Y];
+   if(Killer[Ply&63][0]-i)Killer[Ply&63][1]=Killer[Ply&63][0],Killer[Ply&63][0]=i;
+  }
+  if(a->D<99)                                  /* protect game history     */
    a->K=Z,a->V=m,a->D=d,a->X=X,                /* always store in hash tab */
    a->F=8*(m>q)|S*(m<l),a->Y=Y;                /* move, type (bound/exact),*/
+if(z&S&&K==I&&!Pondering)RootIteration(d-2,m);  /* search statistics        */
 if(z&S&&Post){
   printf("%2d ",d-2);
   printf("%6d ",m);
   printf("%8d %10d %c%c%c%c\n",(GetTickCount()-Ticks)/10,N,
      'i'-(X>>4&15),'9'-(X&15),'i'-(Y>>4&15),'9'-(Y&15)),fflush(stdout);}
  }                                             /*    encoded in X S,8 bits */
+ Ply--;
  return m+=m<e;                                /* delayed-loss bonus       */
 }
 
+/* Can side k move from x to y (not minding the King)? For the killers,    */
+/* which come from other positions: the same scan as in D().               */
+int Pseudo(int k,int x,int y)
+{
+ int j,r,flag;
+ unsigned char u=b[x],t,s,c;
+ if(!u||(u&16)-k||b[y]&&(b[y]&16)==k)return 0;
+ j=od[u&15];
+ W(r=o[++j])
+ {flag=of[j];c=x;
+  do{c+=r;
+   if(c>=16*9|(c&15)>=10)break;
+   t=b[c];
+   if(flag&1+!t)
+   {if(t&&(t&16)==k||flag>>10&zn[c])break;
+    if(c==y)return 1;
+   }
+   s=t;t+=flag&4;
+   if(s&&flag&8)t=0,flag^=flag>>4&15;
+   if(!(flag&S))r^=flag>>12,flag^=flag>>4&15;
+  }W(!t);
+ }
+ return 0;
+}
+
+/* Do the Kings face each other on an open file (the side to move takes)? */
+/* The scan in D() sees it only if it does not start between the Kings.   */
+int KingsFace()
+{
+ int x,y;
+ for(x=3*16;x<6*16;x+=16)                      /* the files of the palaces */
+ {y=x;W(y<x+3&&(b[y]&15)-3)y++;               /* a King on ranks 0-2?     */
+  if(y==x+3)continue;
+  y++;W(y<x+10&&!b[y])y++;                     /* the next piece up        */
+  return y<x+10&&(b[y]&15)==3;
+ }
+ return 0;
+}
+
+/* Can side k capture the other King with a piece (was the last move      */
+/* illegal)? Before a null move, which would hide the capture.            */
+int KingEnPrise(int k)
+{
+ int x,y;
+ for(y=3*16;y<6*16;y++)                        /* the other King: palace   */
+  if((b[y]&15)==3&&(b[y]&16)!=k&&(y&15)<10)break;
+ if(y>=6*16)return 0;
+ for(x=0;x<16*9;x++)                           /* a piece attacking it     */
+  if(b[x]&&(b[x]&16)==k&&(x&15)<10&&Pseudo(k,x,y))return 1;
+ return 0;
+}
+
+/* The depth above which a quiet move is searched 1 ply less: never for a */
+/* killer, from 5 for a move with a good history, from 3 for the others.   */
+int Reduce(int x,int y)
+{
+ int i=x<<8|y;
+ if(Killer[Ply&63][0]==i||Killer[Ply&63][1]==i) return 99;
+ return History[x][y]>HistoryMax>>4 ? 5 : 3;
+}
+
 void
 InitEngine()
 {
- N=8100;W(N-->256)T[N]=rand()>>9;                  /* Zobrist random keys */
- srand(GetTickCount());
+ SeedRandom(0x2545F491);                            /* the same keys always*/
+ N=8100;W(N-->256)T[N]=Random()>>9;                 /* Zobrist random keys */
+ SeedRandom(FixedSeed ? FixedSeed : (unsigned)GetTickCount());
 }
 
 void
-InitGame()
+InitBoard()
 {
  int i; static int initDone;
  if(!initDone)initDone=1,InitEngine();
@@ -226,8 +361,66 @@ InitGame()
  b[32]++;b[96]++;                                    /* adjust b elephants */
  Side=0; /* Side on move, red=0, back = 16 */
  PlyNr=Fifty=R=O=Q=R=0;
- for(i=0; i<10; i++) if(i!=3) R += (w[oo[i]]>>7) + (w[oo[i]]>>7);
+ for(i=0;i<16*9;i++) if(b[i]&&(b[i]&15)-3) R+=10*w[b[i]&15]>>7; /* as in D() */
+}
+
+void
+InitGame()
+{
+ InitBoard();
+ if(FixedSeed) memset(A,0,sizeof(A));  /* each game from an empty table */
  MovesLeft = MaxMoves; TimeLeft = MaxTime; /* initialize time control */
+ PonderFrom=PonderTo=PonderBestFrom=-1; PonderHit=0; PonderAbort=0;
+ OutOfBook=0;
+}
+
+/* Set up the position of a FEN: the ranks from Black 's side (row 0) to    */
+/* Red 's (row 9), then the side to move ('w' or 'r' = Red, 'b' = Black),   */
+/* and optionally the move counters. Returns 0 (and leaves the initial     */
+/* position) if the FEN is malformed.                                      */
+int SetPosition(const char *fen)
+{
+ static const char names[]="PAEBHNCRK",codes[]={1,8,4,4,9,9,10,11,3};
+ const char *c=fen,*s;
+ int i,p,v,col=0,row=0,kings=0,half=0,full=1;
+
+ InitBoard();                         /* the center-pts table, and undo */
+ for(i=0;i<16*9;i++)b[i]=0;
+ for(;*c&&*c!=' ';c++)
+ {if(*c=='/'){if(col!=9||++row>9)break;col=0;continue;}
+  if(*c>='1'&&*c<='9'){col+=*c-'0';if(col>9)break;continue;}
+  s=strchr(names,*c&~32);             /* upper case = Red                */
+  if(!s||col>8)break;
+  p=codes[s-names];
+  if(*c&32)                           /* Black: own Pawns and Elephants */
+  {p+=p==1||p==4;
+   if(p==2&&row>4)p=7;                /* Pawn across the river          */
+   p+=16;
+  }
+  else if(p==1&&row<5)p=6;
+  if(p==3)kings++;if(p==19)kings+=16;
+  b[16*col+row]=p;col++;
+ }
+ if(*c&&*c!=' '||col!=9||row!=9||kings!=17){InitBoard();return 0;}
+
+ W(*c==' ')c++;
+ Side=*c=='b'?16:0;
+ if(*c)sscanf(c+1,"%*s %*s %d %d",&half,&full);
+ Fifty=half;PlyNr=2*(full>1?full-1:0)+Side/16;
+ R=Q=0;                               /* material & eval, as in D()      */
+ for(i=0;i<16*9;i++) if((p=b[i])&&(p&15)-3)
+ {v=10*w[p&15]-(centr[p&15]?b[i+257]:0);
+  Q+=(p&16)==Side?v:-v;
+  R+=10*w[p&15]>>7;
+ }
+ return 1;
+}
+
+/* Forget the positions of the game(s) so far, locked in the hash table.  */
+void ClearGameHistory()
+{
+ int i;
+ for(i=0;i<U;i++) if(A[i].D==99) memset(A+i,0,sizeof(A[i]));
 }
 
 void _OnOpponentMove(const char *move)
@@ -237,34 +430,310 @@ void _OnOpponentMove(const char *move)
  //L=16*('i'-c[2])+'9'-c[3]; /* convert move string to internal formt */
  K=16*(c[0]-'0')+c[1]-'0';
  L=16*(c[2]-'0')+c[3]-'0'; /* convert move string to internal formt */
+ PonderHit = (K==PonderFrom && L==PonderTo);
  if(D(Side,-I,I,Q,S,3)==I)
   Side ^= 16;  /* move was legal and is performed */
  else
  {
      LOGE("MaxQi says: Illegal move '%s' in position\n", move);
-     pboard();
+     if(Post)pboard();
     // (Commented out by HUY) exit(0);
  }
 }
 
-const char *_GenerateNextMove()
+void SetTimeLimit()
 {
- static char move[5];
-
  /* determine time to sepend on next move */
  Ticks = GetTickCount();                /* record starting time            */
  N = MovesLeft<=0 ? 40 : MovesLeft;     /* assume 40 movs for rest of game */
  tlim = (0.6-0.06*(10-8))*(TimeLeft+(N-1)*TimeInc)/(N+7);
  if(tlim>TimeLeft/15) tlim = TimeLeft/15;
+ if(MaxNodes) tlim = 0x3FFFFFFF;        /* the node budget rules instead   */
+}
+
+/* The killers and the history are per search (and the root is at Ply 0). */
+void ClearHistory()
+{
+ memset(Killer,0,sizeof(Killer));
+ memset(History,0,sizeof(History));
+ HistoryMax=Ply=0;
+}
+
+/* Before each search. With a fixed seed, re-seed: the searches then      */
+/* depend on nothing but the calls since InitGame() (the moves, and the    */
+/* searches and analyses, which share the hash table). The table is        */
+/* cleared once per game (see InitGame()), not here: clearing 4M entries   */
+/* would add a fixed cost to the time of each move.                        */
+void PrepareSearch()
+{
+ ClearHistory();
+ PonderAbort=0;                        /* the ponder is over by now       */
+ if(FixedSeed) SeedRandom(FixedSeed);
+}
+
+int AnalysisDepth,AnalysisScore;
+char AnalysisPV[128];
+
+/* ----------------------------------------------------------------------- */
+/* Search statistics: recorded after each iteration of the root search.    */
+/* The principal variation is read back from the hash table.              */
+/* ----------------------------------------------------------------------- */
+void GetPV(char *pv,int size)
+{
+ int f=J,g=Z,k=Side,i,n=0;
+ unsigned char x,y,u,t;
+ struct _ *a;
+ char saved[16*9];
+
+ memcpy(saved,b,sizeof(saved));
+ pv[0]=0;
+ for(i=0;i<20&&n+6<size;i++)
+ {a=A+(J+k&U-1);
+  if(a->K-Z)break;                     /* not in the hash table           */
+  x=a->X;y=a->Y;
+  if(x>=16*9||(x&15)>=10||y>=16*9||(y&15)>=10)break;
+  u=b[x];t=b[y];
+  if(!u||(u&16)-k||t&&(t&16)==k)break; /* not a move of the side to move  */
+  n+=sprintf(pv+n,"%s%d%d%d%d",n?" ":"",x>>4,x&15,y>>4,y&15);
+  if((t&15)==3)break;                  /* King capture                    */
+  b[x]=0;b[y]=u;                       /* do move                         */
+  if((u&15)<3&&zn[x]-zn[y])b[y]+=5;    /* upgrade Pawn                    */
+  J+=J(0);Z+=J(4);
+  k^=16;
+ }
+ memcpy(b,saved,sizeof(saved));J=f;Z=g;
+}
+
+/* Swap "col,row" <=> "row,col" in a list of moves (the Java side uses the latter). */
+void SwapRowCol(char *s)
+{
+ char c;
+ for(;s[0]&&s[1]&&s[2]&&s[3];s+=4)
+ {c=s[0];s[0]=s[1];s[1]=c;
+  c=s[2];s[2]=s[3];s[3]=c;
+  if(*(s+4)==' ')s++;
+ }
+}
+
+#ifndef MAXQI_UCCI
+void ReportProgress()
+{
+ JNIEnv *env=SearchEnv;
+ jclass cls;
+ jmethodID method;
+ jstring pv;
+ char s[sizeof(Stats.pv)];
+
+ if(!env)return;                      /* not in generateMove()           */
+ cls=(*env)->GetObjectClass(env,SearchThiz);
+ method=(*env)->GetMethodID(env,cls,"onSearchProgress","(IIIIIILjava/lang/String;)V");
+ (*env)->DeleteLocalRef(env,cls);
+ if(!method){(*env)->ExceptionClear(env);return;}
+ strcpy(s,Stats.pv);SwapRowCol(s);
+ pv=(*env)->NewStringUTF(env,s);
+ (*env)->CallVoidMethod(env,SearchThiz,method,Stats.depth,Stats.score,Stats.nodes,
+                        Stats.elapsed,Stats.probes,Stats.hits,pv);
+ (*env)->DeleteLocalRef(env,pv);
+}
+#endif
+
+void RootIteration(int d,int m)
+{
+ if(Analyzing)                        /* see _Analyze()                  */
+ {AnalysisDepth=d;AnalysisScore=m;
+  GetPV(AnalysisPV,sizeof(AnalysisPV));
+  return;
+ }
+ Stats.depth=d;Stats.score=m;Stats.nodes=N;
+ Stats.elapsed=GetTickCount()-Ticks;
+ Stats.probes=HashProbes;Stats.hits=HashHits;
+ GetPV(Stats.pv,sizeof(Stats.pv));
+ ReportProgress();
+}
+
+/* ----------------------------------------------------------------------- */
+/* Pondering: while the opponent thinks, play his expected reply (the best */
+/* move stored in the hash table), search our answer to it, then take all  */
+/* of it back. The hash table stays warm, and if the opponent really plays */
+/* the predicted move we already have our answer.                          */
+/* ----------------------------------------------------------------------- */
+struct State {char b[513];int J,Z,Side,Q,O,R,PlyNr,Fifty;};
+
+void SaveState(struct State *s)
+{
+ memcpy(s->b,b,sizeof(s->b));
+ s->J=J;s->Z=Z;s->Side=Side;s->Q=Q;s->O=O;s->R=R;s->PlyNr=PlyNr;s->Fifty=Fifty;
+}
+
+void RestoreState(const struct State *s)
+{
+ memcpy(b,s->b,sizeof(s->b));
+ J=s->J;Z=s->Z;Side=s->Side;Q=s->Q;O=s->O;R=s->R;PlyNr=s->PlyNr;Fifty=s->Fifty;
+}
+
+int _Ponder()
+{
+ struct State before;
+ struct _ *a, *c, savedA, savedC;
+
+ PonderFrom=PonderTo=PonderBestFrom=-1; PonderHit=0;
+ if(FixedSeed) return AI_RC_NOT_SUPPORTED; /* would make moves differ      */
+ a=A+(J+Side&U-1);
+ if(a->K-Z || (unsigned char)a->Y==255) return AI_RC_NOT_FOUND; /* no hint */
+
+ SaveState(&before); savedA=*a;
+ ClearHistory();
+ SetTimeLimit();
+ K=(unsigned char)a->X; L=(unsigned char)a->Y;
+ PonderFrom=K; PonderTo=L;            /* a hit from now on is recognized */
+ Pondering=1;
+ if(D(Side,-I,I,Q,S,3)!=I)            /* predicted move is not legal     */
+  PonderFrom=PonderTo=-1;
+ else                                 /* play it                         */
+ {Side ^= 16;
+  c=A+(J+Side&U-1); savedC=*c;
+  N=0;K=I;
+  if(D(Side,-I,I,Q,S,3)==I) PonderBestFrom=K, PonderBestTo=L;
+  *c=savedC;                          /* undo the game-history locks     */
+ }
+ Pondering=0;
+ *a=savedA;
+ RestoreState(&before);
+ K=I;
+ return PonderBestFrom<0 ? AI_RC_NOT_FOUND : AI_RC_OK;
+}
+
+/* The opponent moved: finish the ponder search only if it was a hit.     */
+/* On a miss, a ponder search stops deepening, even one not started yet:  */
+/* the abort stays set until the next real search (see PrepareSearch()).  */
+int StopPonder(const char *move)
+{
+ int k=16*(move[0]-'0')+move[1]-'0', l=16*(move[2]-'0')+move[3]-'0';
+ if(k==PonderFrom && l==PonderTo) return AI_RC_OK;
+ PonderAbort=1;
+ return AI_RC_NOT_FOUND;
+}
+
+/* ----------------------------------------------------------------------- */
+/* Analysis: search a position, given by the moves from the start, without */
+/* disturbing the game in progress. The hash table is shared, so repeated  */
+/* queries are fast. Multi-PV: search again with the best moves excluded.  */
+/* ----------------------------------------------------------------------- */
+#define MAX_ANALYSIS_LINES 8
+#define MAX_LOCKS 600
+struct AnalysisLine {int from,to,score,depth;char pv[128];} Lines[MAX_ANALYSIS_LINES];
+struct _ *LockedA[MAX_LOCKS],LockedV[MAX_LOCKS]; /* hash entries to restore */
+int NLocked;
+
+int Excluded(int x,int y)
+{
+ int i;
+ for(i=0;i<NExcl;i++) if(Excl[i][0]==x&&Excl[i][1]==y) return 1;
+ return 0;
+}
+
+/* A root search may lock its entry as game history: save it first. */
+int SaveRootEntry()
+{
+ if(NLocked==MAX_LOCKS) return 0;
+ LockedA[NLocked]=A+(J+Side&U-1);
+ LockedV[NLocked]=*LockedA[NLocked];
+ NLocked++;
+ return 1;
+}
+
+/* The position is given by the moves from the start, or by a FEN and the  */
+/* moves from there: "fen <fen> [moves ...]" (see SetPosition()).          */
+/* Returns the number of lines found, or -1 if a move (or the FEN) is bad. */
+int _Analyze(const char *moves,int depth,int msec,int multiPv)
+{
+ struct State live,pos;
+ int savedMaxDepth=MaxDepth,savedMaxNodes=MaxNodes,savedTlim=tlim,savedTicks=Ticks,savedN=N;
+ int lines=0,r;
+ const char *c;
+
+ SaveState(&live);
+ ClearHistory();
+ NLocked=0;
+ InitBoard();
+ c=moves;
+ if(!strncmp(c,"fen ",4))
+ {if(!SetPosition(c+4))lines=-1;
+  c=strstr(c," moves ");
+  c=lines<0||!c?"":c+7;
+ }
+ for(;*c;)                            /* play the moves: "col,row,col,row" */
+ {if(*c==' '){c++;continue;}
+  if(!c[1]||!c[2]||!c[3]||!SaveRootEntry()){lines=-1;break;}
+  K=16*(c[0]-'0')+c[1]-'0';
+  L=16*(c[2]-'0')+c[3]-'0';
+  if(D(Side,-I,I,Q,S,3)!=I){lines=-1;break;}
+  Side^=16;
+  c+=4;
+ }
+
+ if(lines==0)
+ {if(multiPv<1)multiPv=1;
+  if(multiPv>MAX_ANALYSIS_LINES)multiPv=MAX_ANALYSIS_LINES;
+  MaxDepth=depth>0?depth+2:60;
+  MaxNodes=0;
+  SaveState(&pos);
+  Analyzing=1;NExcl=0;
+  for(lines=0;lines<multiPv;lines++)
+  {RestoreState(&pos);
+   if(!SaveRootEntry())break;
+   Ticks=GetTickCount();
+   tlim=msec>0?msec/multiPv:0x3FFFFFFF;
+   N=0;K=I;AnalysisDepth=0;AnalysisPV[0]=0;
+   r=D(Side,-I,I,Q,S,3);
+   NLocked--;*LockedA[NLocked]=LockedV[NLocked];   /* unlock the root   */
+   if(r!=I||!AnalysisDepth)break;                   /* no (more) moves  */
+   Lines[lines].from=K;Lines[lines].to=L;
+   Lines[lines].score=AnalysisScore;Lines[lines].depth=AnalysisDepth;
+   strcpy(Lines[lines].pv,AnalysisPV);
+   Excl[NExcl][0]=K;Excl[NExcl++][1]=L;
+  }
+  Analyzing=0;NExcl=0;
+ }
+
+ W(NLocked)NLocked--,*LockedA[NLocked]=LockedV[NLocked]; /* newest first */
+ RestoreState(&live);
+ MaxDepth=savedMaxDepth;MaxNodes=savedMaxNodes;tlim=savedTlim;Ticks=savedTicks;N=savedN;K=I;
+ return lines;
+}
+
+const char *_GenerateNextMove()
+{
+ static char move[5];
+ int from, to, r;
+
+ SetTimeLimit();
+ PrepareSearch();
+ memset(&Stats,0,sizeof(Stats));HashProbes=HashHits=0;
 
  /* now call the AI */
  N=0;K=I;
- if (D(Side,-I,I,Q,S,3)!=I) sprintf(move, "none"); /* no move found */ else
+ if(EgtbProbeMove(b,Side,&from,&to,&r))/* a tablebase ending: no search  */
+  K=from, L=to;
+ else if(PonderHit && PonderBestFrom>=0)/* ponder hit: answer is ready    */
+  K=PonderBestFrom, L=PonderBestTo;
+ else if(!OutOfBook && BookIsOpen())   /* still in the opening book?      */
+ {if(BookProbe(BookHash(b,Side),Random(),&from,&to)) K=from, L=to;
+  else OutOfBook=1;
+ }
+ PonderHit=0; PonderBestFrom=-1;
+ r = K-I ? D(Side,-I,I,Q,S,3) : 0;     /* play the prepared move, if any  */
+ if(r!=I) K=I, r=D(Side,-I,I,Q,S,3);   /* none (or illegal): search       */
+ if (r!=I) sprintf(move, "none"); /* no move found */ else
  {/* legal move was found and played */
   Side ^= 16; /* other side moves next */
   //sprintf(move, "%c%c%c%c",'i'-(K>>4),'9'-(K&15),'i'-(L>>4&15),'9'-(L&15));
   sprintf(move, "%d%d%d%d",(K>>4),(K&15),(L>>4&15),(L&15));
 
+  Stats.nodes=N;Stats.elapsed=GetTickCount()-Ticks;
+  Stats.probes=HashProbes;Stats.hits=HashHits;
+  if(!Stats.depth)strcpy(Stats.pv,move);  /* a prepared move: no search */
+
   /* time-control accounting */
   N = GetTickCount() - Ticks;     /* determine time actually used for move */
   TimeLeft -= N;
@@ -279,28 +748,51 @@ const char *_GenerateNextMove()
  return move;
 }
 
+#ifndef MAXQI_UCCI
 ///////////////////////////////////////////
 //  Public API                           //
 ///////////////////////////////////////////
 
 /*
- * Set AI 's difficulty level [1...10].
+ * Set AI 's difficulty level [0...2].
+ * A level is a budget of nodes (no new iteration is started past it), so that
+ * the strength does not depend on the speed of the device. The budgets roughly
+ * match the old depth limits (2, 6, 9) in the opening.
  */
 jint
 Java_com_playxiangqi_hoxchess_AIEngine_setDifficultyLevel( JNIEnv* env,
 		                                                   jobject thiz,
 		                                                   jint nAILevel )
 {
-    int actualLevel = 1;
+    int maxNodes;
     switch (nAILevel)
     {
-        case 1: actualLevel = 6; break;
-        case 2: actualLevel = 9; break;
+        case 1: maxNodes = 15000; break;
+        case 2: maxNodes = 500000; break;
         case 0: /* falls through */
-        default: actualLevel = 2;
+        default: maxNodes = 60;
     }
-    LOGI("setDifficultyLevel: nAILevel: [%d], actual [%d] \n", nAILevel, actualLevel);
-    MaxDepth = actualLevel;
+    LOGI("setDifficultyLevel: nAILevel: [%d], max nodes [%d] \n", nAILevel, maxNodes);
+    MaxNodes = maxNodes;
+    MaxDepth = 60;
+    return AI_RC_OK;
+}
+
+/*
+ * Set the seed of the random numbers (0 = a random seed).
+ * With a fixed seed, the same sequence of calls since initGame() (the moves,
+ * the searches at their levels, and the analyses) gives the same AI moves.
+ * The same position alone does not: the hash table is cleared only by
+ * initGame(), and is shared by all the searches since. Pondering is disabled.
+ */
+jint
+Java_com_playxiangqi_hoxchess_AIEngine_setRandomSeed( JNIEnv* env,
+                                                      jobject thiz,
+                                                      jint seed )
+{
+    LOGI("setRandomSeed: [%d] \n", seed);
+    FixedSeed = (unsigned int) seed;
+    SeedRandom(FixedSeed ? FixedSeed : (unsigned)GetTickCount());
     return AI_RC_OK;
 }
 
@@ -315,7 +807,10 @@ jstring
 Java_com_playxiangqi_hoxchess_AIEngine_generateMove( JNIEnv* env,
                                                       jobject thiz )
 {
+    SearchEnv = env;
+    SearchThiz = thiz;
     const char* aiMove = _GenerateNextMove();
+    SearchEnv = NULL;
     LOGI("AI generated this move: (%s) \n", aiMove);
 
     char szMove[5] = {0, 0, 0, 0, 0 };
@@ -348,6 +843,149 @@ Java_com_playxiangqi_hoxchess_AIEngine_onHumanMove( JNIEnv* env,
     return AI_RC_OK;
 }
 
+/*
+ * Get the statistics of the last generateMove():
+ *   { depth, score, nodes, elapsed-msec, hash-probes, hash-hits }.
+ */
+jint
+Java_com_playxiangqi_hoxchess_AIEngine_getSearchStats( JNIEnv* env,
+                                                       jobject thiz,
+                                                       jintArray stats )
+{
+    jint values[6];
+    if ((*env)->GetArrayLength(env, stats) < 6) return AI_RC_ERR;
+    values[0] = Stats.depth;
+    values[1] = Stats.score;
+    values[2] = Stats.nodes;
+    values[3] = Stats.elapsed;
+    values[4] = Stats.probes;
+    values[5] = Stats.hits;
+    (*env)->SetIntArrayRegion(env, stats, 0, 6, values);
+    return AI_RC_OK;
+}
+
+/*
+ * Get the principal variation of the last generateMove(), e.g., "9081 0171 ...".
+ */
+jstring
+Java_com_playxiangqi_hoxchess_AIEngine_getSearchPV( JNIEnv* env,
+                                                    jobject thiz )
+{
+    char szPV[sizeof(Stats.pv)];
+    strcpy(szPV, Stats.pv);
+    SwapRowCol(szPV);
+    return (*env)->NewStringUTF(env, szPV);
+}
+
+/*
+ * Analyze the position after the given moves ("row,col,row,col" each, separated
+ * by blanks) without playing any move. One line per PV: "move score depth pv...".
+ * @return NULL if a move is illegal.
+ */
+jstring
+Java_com_playxiangqi_hoxchess_AIEngine_nativeAnalyze( JNIEnv* env,
+                                                      jobject thiz,
+                                                      jstring moves,
+                                                      jint depth,
+                                                      jint msec,
+                                                      jint multiPv )
+{
+    const char* szMoves = (*env)->GetStringUTFChars(env, moves, NULL);
+    char* szInternal = strdup(szMoves);
+    char szResult[MAX_ANALYSIS_LINES * 160];
+    char szMove[5], szPV[sizeof(Lines[0].pv)];
+    char* szMovesOnly;
+    int lines, i, n = 0;
+
+    (*env)->ReleaseStringUTFChars(env, moves, szMoves);
+    if (!szInternal) return NULL;
+    szMovesOnly = szInternal;
+    if (!strncmp(szMovesOnly, "fen ", 4)) {  /* The FEN is left as is. */
+        szMovesOnly = strstr(szMovesOnly, " moves ");
+        if (szMovesOnly) SwapRowCol(szMovesOnly + 7);
+    } else {
+        SwapRowCol(szMovesOnly);
+    }
+    lines = _Analyze(szInternal, depth, msec, multiPv);
+    free(szInternal);
+    LOGI("analyze(): depth [%d], msec [%d], multiPv [%d] => lines = [%d] \n", depth, msec, multiPv, lines);
+    if (lines < 0) return NULL;
+
+    szResult[0] = '\0';
+    for (i = 0; i < lines; i++) {
+        sprintf(szMove, "%d%d%d%d", Lines[i].from>>4, Lines[i].from&15, Lines[i].to>>4, Lines[i].to&15);
+        SwapRowCol(szMove);
+        strcpy(szPV, Lines[i].pv);
+        SwapRowCol(szPV);
+        n += sprintf(szResult + n, "%s %d %d %s\n", szMove, Lines[i].score, Lines[i].depth, szPV);
+    }
+    return (*env)->NewStringUTF(env, szResult);
+}
+
+/*
+ * Open the opening book (see MaxQiBook.h) at the given path.
+ */
+jint
+Java_com_playxiangqi_hoxchess_AIEngine_openBook( JNIEnv* env,
+                                                 jobject thiz,
+                                                 jstring path )
+{
+    const char* szPath = (*env)->GetStringUTFChars(env, path, NULL);
+    int opened = BookOpen( szPath );
+    LOGI("openBook(): [%s] opened = [%d] \n", szPath, opened);
+    (*env)->ReleaseStringUTFChars(env, path, szPath);
+    return opened ? AI_RC_OK : AI_RC_ERR;
+}
+
+/*
+ * Map the endgame tablebases (see MaxQiEgtb.h) in the given folder.
+ */
+jint
+Java_com_playxiangqi_hoxchess_AIEngine_openTablebases( JNIEnv* env,
+                                                       jobject thiz,
+                                                       jstring dir )
+{
+    const char* szDir = (*env)->GetStringUTFChars(env, dir, NULL);
+    int tables = EgtbOpenDir( szDir );
+    LOGI("openTablebases(): [%s] tables = [%d] \n", szDir, tables);
+    (*env)->ReleaseStringUTFChars(env, dir, szDir);
+    return tables > 0 ? AI_RC_OK : AI_RC_NOT_FOUND;
+}
+
+/*
+ * Ponder on the opponent 's time. Blocks until the search is done
+ * or stopped by stopPonder().
+ */
+jint
+Java_com_playxiangqi_hoxchess_AIEngine_ponder( JNIEnv* env,
+                                               jobject thiz )
+{
+    int rc = _Ponder();
+    LOGI("ponder(): rc = [%d], predicted (%x => %x) \n", rc, PonderFrom, PonderTo);
+    return rc;
+}
+
+/*
+ * Stop pondering unless the given (human) move is the predicted one.
+ * @return AI_RC_OK on a ponder hit.
+ */
+jint
+Java_com_playxiangqi_hoxchess_AIEngine_stopPonder( JNIEnv* env,
+                                                   jobject thiz,
+                                                   jint row1, jint col1,
+                                                   jint row2, jint col2 )
+{
+    char szMove[5] = {0, 0, 0, 0, 0 };
+    szMove[0] = ('0' + col1);
+    szMove[1] = ('0' + row1);
+    szMove[2] = ('0' + col2);
+    szMove[3] = ('0' + row2);
+
+    int rc = StopPonder( szMove );
+    LOGI("stopPonder(): move (%s), hit = [%d] \n", szMove, (rc == AI_RC_OK));
+    return rc;
+}
+
 /*
  * Get the AI 's information.
  */
@@ -358,5 +996,6 @@ Java_com_playxiangqi_hoxchess_AIEngine_getInfo( JNIEnv* env,
 	return (*env)->NewStringUTF(env, "H.G. Muller\n"
             "home.hccnet.nl/h.g.muller/XQhaqikid.html");
 }
+#endif /* MAXQI_UCCI */
 
 /************************* END OF FILE ***************************************/
@@ -0,0 +1,151 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <stdlib.h>
+#include <string.h>
+#include <fcntl.h>
+#include <unistd.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+
+#include "MaxQiBook.h"
+
+static const unsigned char *bookData_ = NULL;  /* the mapped file */
+static size_t bookSize_ = 0;
+static unsigned int bookCount_ = 0;
+
+/* MaxQi piece code (0..15) => piece kind, so that promoted Pawns and both
+ * kinds of Elephants hash the same. 0 = no piece. */
+static const int pieceKind_[16] = { 0, 1, 1, 2, 3, 3, 1, 1, 4, 5, 6, 7, 0, 0, 0, 0 };
+
+/* The splitmix64 finalizer: a fixed, portable source of Zobrist-like keys. */
+static BookKey Mix(BookKey z)
+{
+    z += 0x9E3779B97F4A7C15ULL;
+    z = (z ^ (z >> 30)) * 0xBF58476D1CE4E5B9ULL;
+    z = (z ^ (z >> 27)) * 0x94D049BB133111EBULL;
+    return z ^ (z >> 31);
+}
+
+BookKey BookHash(const char *board, int side)
+{
+    BookKey key = 0;
+    int x, u, kind;
+    for (x = 0; x < 16*9; x++) {
+        if ((x & 15) >= 10) continue;
+        u = board[x] & 31;
+        kind = pieceKind_[u & 15];
+        if (kind) key ^= Mix((BookKey) ((((u >> 4) & 1) * 8 + kind) * 256 + x));
+    }
+    if (side) key ^= Mix(0xB1AC4ULL);
+    return key;
+}
+
+static BookKey ReadU64(const unsigned char *p)
+{
+    BookKey v = 0;
+    int i;
+    for (i = 7; i >= 0; i--) v = (v << 8) | p[i];
+    return v;
+}
+
+static unsigned int ReadU32(const unsigned char *p)
+{
+    return p[0] | p[1] << 8 | p[2] << 16 | (unsigned int) p[3] << 24;
+}
+
+static BookKey EntryKey(unsigned int index)
+{
+    return ReadU64(bookData_ + BOOK_HEADER_SIZE + (size_t) index * BOOK_ENTRY_SIZE);
+}
+
+int BookOpen(const char *path)
+{
+    struct stat st;
+    void *data;
+    int fd;
+
+    BookClose();
+
+    fd = open(path, O_RDONLY);
+    if (fd < 0) return 0;
+    if (fstat(fd, &st) != 0 || st.st_size < BOOK_HEADER_SIZE) {
+        close(fd);
+        return 0;
+    }
+    data = mmap(NULL, (size_t) st.st_size, PROT_READ, MAP_SHARED, fd, 0);
+    close(fd); /* the mapping stays valid */
+    if (data == MAP_FAILED) return 0;
+
+    bookData_ = (const unsigned char *) data;
+    bookSize_ = (size_t) st.st_size;
+    bookCount_ = ReadU32(bookData_ + 8);
+
+    if (   memcmp(bookData_, BOOK_MAGIC, 4) != 0
+        || ReadU32(bookData_ + 4) != BOOK_VERSION
+        || BOOK_HEADER_SIZE + (size_t) bookCount_ * BOOK_ENTRY_SIZE > bookSize_) {
+        BookClose();
+        return 0;
+    }
+    return 1;
+}
+
+void BookClose(void)
+{
+    if (bookData_) munmap((void *) bookData_, bookSize_);
+    bookData_ = NULL;
+    bookSize_ = 0;
+    bookCount_ = 0;
+}
+
+int BookIsOpen(void)
+{
+    return bookData_ != NULL;
+}
+
+int BookProbe(BookKey key, unsigned int random, int *from, int *to)
+{
+    unsigned int lo = 0, hi = bookCount_, i;
+    unsigned int total = 0, pick;
+    const unsigned char *e;
+
+    if (!bookData_) return 0;
+
+    while (lo < hi) {                 /* the first entry with a key >= 'key' */
+        unsigned int mid = lo + (hi - lo) / 2;
+        if (EntryKey(mid) < key) lo = mid + 1; else hi = mid;
+    }
+
+    for (i = lo; i < bookCount_ && EntryKey(i) == key; i++) {
+        e = bookData_ + BOOK_HEADER_SIZE + (size_t) i * BOOK_ENTRY_SIZE;
+        total += e[10] | e[11] << 8;
+    }
+    if (total == 0) return 0;
+
+    pick = random % total;
+    for (i = lo; ; i++) {
+        e = bookData_ + BOOK_HEADER_SIZE + (size_t) i * BOOK_ENTRY_SIZE;
+        total = e[10] | e[11] << 8;
+        if (pick < total) break;
+        pick -= total;
+    }
+    *from = e[8];
+    *to = e[9];
+    return 1;
+}
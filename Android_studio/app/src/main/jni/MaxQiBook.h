@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * The opening book of MaxQi.
+ *
+ * The book is a binary file of entries sorted by position key:
+ *
+ *   Header (16 bytes): "MQBK", version (u32), entry count (u32), reserved (u32).
+ *   Entry  (16 bytes): key (u64), from (u8), to (u8), weight (u16), reserved (u32).
+ *
+ * All integers are little-endian. Squares use the MaxQi layout (16 * column + row).
+ * The key does NOT depend on MaxQi 's Zobrist table, so that the book format
+ * stays the same whatever changes inside the engine.
+ */
+
+#ifndef __INCLUDED_MAXQI_BOOK_H__
+#define __INCLUDED_MAXQI_BOOK_H__
+
+#define BOOK_MAGIC        "MQBK"
+#define BOOK_VERSION      1
+#define BOOK_HEADER_SIZE  16
+#define BOOK_ENTRY_SIZE   16
+
+typedef unsigned long long BookKey;
+
+/* Key of a position. 'board' is a MaxQi board (16x9, 0x88-style), side = 0 (red) or 16. */
+BookKey BookHash(const char *board, int side);
+
+/* Map the book file in memory. Returns 1 on success. */
+int  BookOpen(const char *path);
+void BookClose(void);
+int  BookIsOpen(void);
+
+/* Pick a book move for the given key, weighted by 'random' (any non-negative number).
+ * Returns 1 if found. */
+int  BookProbe(BookKey key, unsigned int random, int *from, int *to);
+
+#endif /* __INCLUDED_MAXQI_BOOK_H__ */
@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * A host tool (NOT part of the Android build) that compiles MaxQi 's opening book
+ * from a directory of game records.
+ *
+ * Build & run:
+ *   $ cc -O2 -o MaxQiBookBuilder MaxQiBookBuilder.c MaxQiBook.c
+ *   $ ./MaxQiBookBuilder <records-dir> ../assets/book.bin [max-plies] [min-count]
+ *
+ * Each file in <records-dir> holds one game per line, as a list of moves in the
+ * PlayXiangqi server notation (e.g., "7747/1927/..."; '/', ',' or blanks separate
+ * the moves). Lines starting with '#' are ignored.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <dirent.h>
+
+#include "MaxQiBook.h"
+
+#define MAX_LINE 8192
+
+typedef struct {
+    BookKey key;
+    unsigned char from, to;
+    unsigned int weight;
+} Entry;
+
+static Entry *entries_ = NULL;
+static size_t entryCount_ = 0;
+static size_t entryCapacity_ = 0;
+
+/* The initial position, with the same piece codes as MaxQi 's InitGame(). */
+static void InitBoard(char *b)
+{
+    static const char oo[9] = { 11, 9, 4, 8, 3, 8, 4, 9, 11 };
+    int k;
+    memset(b, 0, 16*9);
+    b[23] = b[119] = 10; b[18] = b[114] = 26;      /* Cannons */
+    for (k = 0; k < 9; k++) {
+        b[16*k] = (b[16*k+9] = oo[k]) + 16;
+        if (!(k & 1)) b[16*k+3] = 18, b[16*k+6] = 1; /* Pawns   */
+    }
+    b[32]++; b[96]++;                               /* Elephants */
+}
+
+static void AddEntry(BookKey key, int from, int to)
+{
+    if (entryCount_ == entryCapacity_) {
+        entryCapacity_ = entryCapacity_ ? 2 * entryCapacity_ : 4096;
+        entries_ = (Entry *) realloc(entries_, entryCapacity_ * sizeof(Entry));
+        if (!entries_) { fprintf(stderr, "Out of memory\n"); exit(1); }
+    }
+    entries_[entryCount_].key = key;
+    entries_[entryCount_].from = (unsigned char) from;
+    entries_[entryCount_].to = (unsigned char) to;
+    entries_[entryCount_].weight = 1;
+    entryCount_++;
+}
+
+static int ParseSquare(const char *s)
+{
+    int col = s[0] - '0', row = s[1] - '0';
+    if (col < 0 || col > 8 || row < 0 || row > 9) return -1;
+    return 16 * col + row;
+}
+
+/* Returns the number of plies added to the book. */
+static int AddGame(char *line, int maxPlies)
+{
+    char board[16*9];
+    char *token;
+    int side = 0, plies = 0, from, to;
+
+    InitBoard(board);
+    for (token = strtok(line, "/, \t\r\n"); token && plies < maxPlies;
+         token = strtok(NULL, "/, \t\r\n")) {
+        if (strlen(token) != 4) break;
+        from = ParseSquare(token);
+        to = ParseSquare(token + 2);
+        if (from < 0 || to < 0 || !board[from] || (board[from] & 16) != side) break;
+        if (board[to] && (board[to] & 16) == side) break;
+
+        AddEntry(BookHash(board, side), from, to);
+        board[to] = board[from];
+        board[from] = 0;
+        side ^= 16;
+        plies++;
+    }
+    return plies;
+}
+
+static int CompareEntries(const void *a, const void *b)
+{
+    const Entry *x = (const Entry *) a, *y = (const Entry *) b;
+    if (x->key != y->key) return x->key < y->key ? -1 : 1;
+    if (x->from != y->from) return x->from - y->from;
+    return x->to - y->to;
+}
+
+static void WriteU32(FILE *f, unsigned int v)
+{
+    int i;
+    for (i = 0; i < 4; i++) fputc((v >> (8 * i)) & 0xFF, f);
+}
+
+static int WriteBook(const char *path, int minCount)
+{
+    size_t i, j, n = 0;
+    FILE *f;
+
+    /* Merge the same (position, move) pairs. */
+    qsort(entries_, entryCount_, sizeof(Entry), CompareEntries);
+    for (i = 0; i < entryCount_; i = j) {
+        unsigned int weight = 0;
+        for (j = i; j < entryCount_ && CompareEntries(&entries_[i], &entries_[j]) == 0; j++) {
+            weight += entries_[j].weight;
+        }
+        if (weight < (unsigned int) minCount) continue;
+        entries_[n] = entries_[i];
+        entries_[n].weight = weight > 0xFFFF ? 0xFFFF : weight;
+        n++;
+    }
+
+    f = fopen(path, "wb");
+    if (!f) { perror(path); return 0; }
+    fwrite(BOOK_MAGIC, 1, 4, f);
+    WriteU32(f, BOOK_VERSION);
+    WriteU32(f, (unsigned int) n);
+    WriteU32(f, 0);
+    for (i = 0; i < n; i++) {
+        WriteU32(f, (unsigned int) (entries_[i].key & 0xFFFFFFFFULL));
+        WriteU32(f, (unsigned int) (entries_[i].key >> 32));
+        fputc(entries_[i].from, f);
+        fputc(entries_[i].to, f);
+        fputc(entries_[i].weight & 0xFF, f);
+        fputc(entries_[i].weight >> 8, f);
+        WriteU32(f, 0);
+    }
+    fclose(f);
+    printf("Wrote %lu entries to %s\n", (unsigned long) n, path);
+    return 1;
+}
+
+int main(int argc, char *argv[])
+{
+    static char line[MAX_LINE];
+    char path[4096];
+    struct dirent *de;
+    DIR *dir;
+    FILE *f;
+    int maxPlies, minCount, games = 0;
+
+    if (argc < 3) {
+        fprintf(stderr, "Usage: %s <records-dir> <book-file> [max-plies=20] [min-count=1]\n", argv[0]);
+        return 1;
+    }
+    maxPlies = argc > 3 ? atoi(argv[3]) : 20;
+    minCount = argc > 4 ? atoi(argv[4]) : 1;
+
+    dir = opendir(argv[1]);
+    if (!dir) { perror(argv[1]); return 1; }
+    while ((de = readdir(dir)) != NULL) {
+        if (de->d_name[0] == '.') continue;
+        snprintf(path, sizeof(path), "%s/%s", argv[1], de->d_name);
+        f = fopen(path, "r");
+        if (!f) continue;
+        while (fgets(line, sizeof(line), f)) {
+            if (line[0] == '#') continue;
+            if (AddGame(line, maxPlies) > 0) games++;
+        }
+        fclose(f);
+    }
+    closedir(dir);
+
+    printf("Read %d games, %lu book positions\n", games, (unsigned long) entryCount_);
+    return WriteBook(argv[2], minCount) ? 0 : 1;
+}
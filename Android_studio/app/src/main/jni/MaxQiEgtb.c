@@ -0,0 +1,473 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <fcntl.h>
+#include <unistd.h>
+#include <dirent.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+
+#include "MaxQiEgtb.h"
+
+#define ON_BOARD(r, c)  ((r) >= 0 && (r) <= 9 && (c) >= 0 && (c) <= 8)
+#define SQ(r, c)        ((r) * 9 + (c))
+
+static EgtbTable *tables_[EGTB_MAX_TABLES];
+static int tableCount_ = 0;
+
+/* The squares each kind of piece can ever stand on, per side (0 or 1). */
+static signed char domain_[2][8][90];     /* square => index in the domain, or -1 */
+static unsigned char domainSquares_[2][8][90];
+static int domainSize_[2][8];
+static int domainsReady_ = 0;
+
+/* The order of pieces in a signature, and their (rough) values to pick the stronger side. */
+static const char kindOrder_[] = { EGTB_CHARIOT, EGTB_CANNON, EGTB_HORSE,
+                                   EGTB_PAWN, EGTB_ADVISOR, EGTB_ELEPHANT, 0 };
+static const char kindChar_[8] = { 0, 'K', 'A', 'E', 'H', 'R', 'C', 'P' };
+static const int kindValue_[8] = { 0, 0, 2, 2, 4, 9, 5, 1 };
+
+/* MaxQi piece code (0..15) => piece kind. */
+static const int mqKind_[16] = { 0, EGTB_PAWN, EGTB_PAWN, EGTB_KING, EGTB_ELEPHANT,
+                                 EGTB_ELEPHANT, EGTB_PAWN, EGTB_PAWN, EGTB_ADVISOR,
+                                 EGTB_HORSE, EGTB_CANNON, EGTB_CHARIOT, 0, 0, 0, 0 };
+
+// ****************************************************************************
+//
+//                              Rules
+//
+// ****************************************************************************
+
+static int InPalace(int side, int r, int c)
+{
+    return c >= 3 && c <= 5 && (side ? r <= 2 : r >= 7);
+}
+
+static int OwnHalf(int side, int r)
+{
+    return side ? r <= 4 : r >= 5;
+}
+
+static int CanStand(int side, int kind, int r, int c)
+{
+    switch (kind) {
+        case EGTB_KING:     return InPalace(side, r, c);
+        case EGTB_ADVISOR:  return InPalace(side, r, c) && ((r + c) & 1) == (side ? 1 : 0);
+        case EGTB_ELEPHANT: return OwnHalf(side, r) && (c & 1) == 0 && (r % 2) == (side ? 0 : 1)
+                                && (c % 4) == ((r == 2 || r == 7) ? 0 : 2);
+        case EGTB_PAWN:     return side ? (r >= 5 || (r >= 3 && (c & 1) == 0))
+                                        : (r <= 4 || (r <= 6 && (c & 1) == 0));
+        default:            return 1;
+    }
+}
+
+static void InitDomains(void)
+{
+    int s, k, sq;
+    if (domainsReady_) return;
+    for (s = 0; s < 2; s++) {
+        for (k = 1; k < 8; k++) {
+            domainSize_[s][k] = 0;
+            for (sq = 0; sq < 90; sq++) {
+                domain_[s][k][sq] = -1;
+                if (CanStand(s, k, sq / 9, sq % 9)) {
+                    domain_[s][k][sq] = (signed char) domainSize_[s][k];
+                    domainSquares_[s][k][domainSize_[s][k]++] = (unsigned char) sq;
+                }
+            }
+        }
+    }
+    domainsReady_ = 1;
+}
+
+/* The pseudo-legal destinations of the piece on 'from'. Returns the count. */
+static int GenTargets(const EgtbBoard *b, int from, int *to)
+{
+    static const int orth[4][2] = { {-1, 0}, {1, 0}, {0, -1}, {0, 1} };
+    static const int diag[4][2] = { {-1, -1}, {-1, 1}, {1, -1}, {1, 1} };
+    static const int horse[8][4] = { {-2, -1, -1, 0}, {-2, 1, -1, 0}, {2, -1, 1, 0}, {2, 1, 1, 0},
+                                     {-1, -2, 0, -1}, {1, -2, 0, -1}, {-1, 2, 0, 1}, {1, 2, 0, 1} };
+    int p = b->sq[from], side = p & EGTB_SIDE2, s = side ? 1 : 0;
+    int r = from / 9, c = from % 9, n = 0, i, rr, cc, q;
+
+#define ADD(R, C)  do { q = b->sq[SQ(R, C)]; \
+                        if (!q || (q & EGTB_SIDE2) != side) to[n++] = SQ(R, C); } while (0)
+
+    switch (p & 7) {
+        case EGTB_KING:
+            for (i = 0; i < 4; i++) {
+                rr = r + orth[i][0]; cc = c + orth[i][1];
+                if (InPalace(s, rr, cc)) ADD(rr, cc);
+            }
+            break;
+        case EGTB_ADVISOR:
+            for (i = 0; i < 4; i++) {
+                rr = r + diag[i][0]; cc = c + diag[i][1];
+                if (InPalace(s, rr, cc)) ADD(rr, cc);
+            }
+            break;
+        case EGTB_ELEPHANT:
+            for (i = 0; i < 4; i++) {
+                rr = r + 2 * diag[i][0]; cc = c + 2 * diag[i][1];
+                if (ON_BOARD(rr, cc) && OwnHalf(s, rr)
+                    && !b->sq[SQ(r + diag[i][0], c + diag[i][1])]) ADD(rr, cc);
+            }
+            break;
+        case EGTB_HORSE:
+            for (i = 0; i < 8; i++) {
+                rr = r + horse[i][0]; cc = c + horse[i][1];
+                if (ON_BOARD(rr, cc) && !b->sq[SQ(r + horse[i][2], c + horse[i][3])]) ADD(rr, cc);
+            }
+            break;
+        case EGTB_CHARIOT:
+        case EGTB_CANNON:
+            for (i = 0; i < 4; i++) {
+                rr = r + orth[i][0]; cc = c + orth[i][1];
+                for ( ; ON_BOARD(rr, cc) && !b->sq[SQ(rr, cc)]; rr += orth[i][0], cc += orth[i][1])
+                    to[n++] = SQ(rr, cc);
+                if (!ON_BOARD(rr, cc)) continue;
+                if ((p & 7) == EGTB_CHARIOT) { ADD(rr, cc); continue; }
+                for (rr += orth[i][0], cc += orth[i][1];      /* jump over the screen */
+                     ON_BOARD(rr, cc) && !b->sq[SQ(rr, cc)]; rr += orth[i][0], cc += orth[i][1]) ;
+                if (ON_BOARD(rr, cc)) ADD(rr, cc);
+            }
+            break;
+        case EGTB_PAWN:
+            rr = r + (side ? 1 : -1);
+            if (ON_BOARD(rr, c)) ADD(rr, c);
+            if (!OwnHalf(s, r)) {
+                if (c > 0) ADD(r, c - 1);
+                if (c < 8) ADD(r, c + 1);
+            }
+            break;
+    }
+#undef ADD
+    return n;
+}
+
+int EgtbInCheck(const EgtbBoard *b, int side)
+{
+    int to[20], king = -1, other = -1, sq, i, n, r;
+
+    for (sq = 0; sq < 90; sq++) {
+        if ((b->sq[sq] & 7) != EGTB_KING) continue;
+        if ((b->sq[sq] & EGTB_SIDE2) == side) king = sq; else other = sq;
+    }
+    if (king < 0) return 1;
+
+    if (other >= 0 && other % 9 == king % 9) {          /* the Kings must not face each other */
+        int lo = (other < king ? other : king) + 9, hi = other < king ? king : other;
+        for (r = lo; r < hi && !b->sq[r]; r += 9) ;
+        if (r == hi) return 1;
+    }
+
+    for (sq = 0; sq < 90; sq++) {
+        if (!b->sq[sq] || (b->sq[sq] & EGTB_SIDE2) == side) continue;
+        switch (b->sq[sq] & 7) {
+            case EGTB_KING: case EGTB_ADVISOR: case EGTB_ELEPHANT: continue;
+        }
+        n = GenTargets(b, sq, to);
+        for (i = 0; i < n; i++) if (to[i] == king) return 1;
+    }
+    return 0;
+}
+
+void EgtbMakeMove(EgtbBoard *b, int from, int to)
+{
+    b->sq[to] = b->sq[from];
+    b->sq[from] = 0;
+}
+
+int EgtbLegalMoves(const EgtbBoard *b, int side, int *from, int *to)
+{
+    EgtbBoard tmp;
+    int targets[20], sq, i, n, count = 0;
+
+    for (sq = 0; sq < 90; sq++) {
+        if (!b->sq[sq] || (b->sq[sq] & EGTB_SIDE2) != side) continue;
+        n = GenTargets(b, sq, targets);
+        for (i = 0; i < n; i++) {
+            tmp = *b;
+            EgtbMakeMove(&tmp, sq, targets[i]);
+            if (EgtbInCheck(&tmp, side)) continue;
+            from[count] = sq;
+            to[count++] = targets[i];
+        }
+    }
+    return count;
+}
+
+// ****************************************************************************
+//
+//                              Tables
+//
+// ****************************************************************************
+
+static int SideString(const int *counts, char *out)
+{
+    int i, j, value = 0;
+    *out++ = 'K';
+    for (i = 0; kindOrder_[i]; i++) {
+        for (j = 0; j < counts[(int) kindOrder_[i]]; j++) *out++ = kindChar_[(int) kindOrder_[i]];
+        value += counts[(int) kindOrder_[i]] * kindValue_[(int) kindOrder_[i]];
+    }
+    *out = '\0';
+    return value;
+}
+
+int EgtbSignature(const EgtbBoard *b, char *sig)
+{
+    int counts[2][8], sq, pieces = 0, value0, value1, flip;
+    char s0[EGTB_MAX_PIECES + 2], s1[EGTB_MAX_PIECES + 2];
+
+    memset(counts, 0, sizeof(counts));
+    for (sq = 0; sq < 90; sq++) {
+        if (!b->sq[sq]) continue;
+        counts[(b->sq[sq] & EGTB_SIDE2) ? 1 : 0][b->sq[sq] & 7]++;
+        pieces++;
+    }
+    sig[0] = '\0';
+    if (pieces > EGTB_MAX_PIECES || counts[0][EGTB_KING] != 1 || counts[1][EGTB_KING] != 1) return -1;
+
+    if (   !counts[0][EGTB_CHARIOT] && !counts[0][EGTB_CANNON] && !counts[0][EGTB_HORSE] && !counts[0][EGTB_PAWN]
+        && !counts[1][EGTB_CHARIOT] && !counts[1][EGTB_CANNON] && !counts[1][EGTB_HORSE] && !counts[1][EGTB_PAWN])
+        return 0;  /* nobody can ever give check */
+
+    value0 = SideString(counts[0], s0);
+    value1 = SideString(counts[1], s1);
+    flip = value1 > value0 || (value1 == value0 && strcmp(s1, s0) > 0);
+    strcpy(sig, flip ? s1 : s0);
+    strcat(sig, flip ? s0 : s1);
+    return flip;
+}
+
+int EgtbInitTable(EgtbTable *t, const char *sig)
+{
+    const char *p;
+    int side = -1, k;
+
+    InitDomains();
+    memset(t, 0, sizeof(*t));
+    if (strlen(sig) >= sizeof(t->sig)) return 0;
+    strcpy(t->sig, sig);
+    t->size = 1;
+    for (p = sig; *p; p++) {
+        for (k = 1; k < 8 && kindChar_[k] != *p; k++) ;
+        if (k == 8 || t->nSlots == EGTB_MAX_PIECES) return 0;
+        if (k == EGTB_KING) side++;
+        if (side < 0 || side > 1) return 0;
+        t->slotSide[t->nSlots] = side;
+        t->slotKind[t->nSlots++] = k;
+        t->size *= (unsigned long) domainSize_[side][k];
+    }
+    return side == 1;
+}
+
+/* The board is read in table coordinates (flipped if needed). Pieces of the
+ * same kind fill their slots in the order of their squares. */
+long EgtbIndex(const EgtbTable *t, const EgtbBoard *b, int flip)
+{
+    int used[EGTB_MAX_PIECES] = { 0 };
+    long index = 0;
+    int sq, p, side, kind, i, d;
+    unsigned long weight = 1;
+    long digit[EGTB_MAX_PIECES];
+
+    for (sq = 0; sq < 90; sq++) {
+        p = b->sq[flip ? SQ(9 - sq / 9, sq % 9) : sq];
+        if (!p) continue;
+        side = ((p & EGTB_SIDE2) ? 1 : 0) ^ flip;
+        kind = p & 7;
+        for (i = 0; i < t->nSlots && (used[i] || t->slotSide[i] != side || t->slotKind[i] != kind); i++) ;
+        if (i == t->nSlots) return -1;
+        d = domain_[side][kind][sq];
+        if (d < 0) return -1;
+        used[i] = 1;
+        digit[i] = d;
+    }
+    for (i = 0; i < t->nSlots; i++) if (!used[i]) return -1;
+
+    for (i = t->nSlots - 1; i >= 0; i--) {
+        index += digit[i] * (long) weight;
+        weight *= (unsigned long) domainSize_[t->slotSide[i]][t->slotKind[i]];
+    }
+    return index;
+}
+
+/* Decode in table coordinates. Overlapping pieces leave fewer pieces on the board. */
+void EgtbDecode(const EgtbTable *t, unsigned long index, EgtbBoard *b)
+{
+    int i, side, kind;
+    memset(b, 0, sizeof(*b));
+    for (i = t->nSlots - 1; i >= 0; i--) {
+        side = t->slotSide[i];
+        kind = t->slotKind[i];
+        b->sq[domainSquares_[side][kind][index % domainSize_[side][kind]]]
+            = (signed char) ((side ? EGTB_SIDE2 : 0) | kind);
+        index /= domainSize_[side][kind];
+    }
+}
+
+int EgtbRegister(EgtbTable *t)
+{
+    unsigned long i;
+    if (EgtbFind(t->sig) || tableCount_ == EGTB_MAX_TABLES) return 0;
+    t->maxDtm = 0;
+    for (i = 0; t->data && i < 2 * t->size; i++)
+        if (t->data[i] > t->maxDtm + 1) t->maxDtm = t->data[i] - 1;
+    tables_[tableCount_++] = t;
+    return 1;
+}
+
+EgtbTable *EgtbFind(const char *sig)
+{
+    int i;
+    for (i = 0; i < tableCount_; i++)
+        if (strcmp(tables_[i]->sig, sig) == 0) return tables_[i];
+    return NULL;
+}
+
+int EgtbLookup(const EgtbBoard *b, int side)
+{
+    char sig[EGTB_MAX_PIECES + 3];
+    EgtbTable *t;
+    long index;
+    int flip = EgtbSignature(b, sig);
+
+    if (flip < 0) return EGTB_UNKNOWN;
+    if (!sig[0]) return EGTB_DRAW;
+    if (!(t = EgtbFind(sig)) || !t->data) return EGTB_UNKNOWN;
+    if ((index = EgtbIndex(t, b, flip)) < 0) return EGTB_UNKNOWN;
+    if (side) flip ^= 1;          /* the data of the weaker side to move is the 2nd half */
+    return (int) t->data[(flip ? t->size : 0) + (unsigned long) index] - 1;
+}
+
+static unsigned int ReadU32(const unsigned char *p)
+{
+    return p[0] | p[1] << 8 | p[2] << 16 | (unsigned int) p[3] << 24;
+}
+
+int EgtbOpenFile(const char *path)
+{
+    struct stat st;
+    unsigned char *data;
+    EgtbTable *t;
+    char sig[17];
+    int fd;
+
+    fd = open(path, O_RDONLY);
+    if (fd < 0) return 0;
+    if (fstat(fd, &st) != 0 || st.st_size < EGTB_HEADER_SIZE) {
+        close(fd);
+        return 0;
+    }
+    data = (unsigned char *) mmap(NULL, (size_t) st.st_size, PROT_READ, MAP_SHARED, fd, 0);
+    close(fd); /* the mapping stays valid */
+    if (data == MAP_FAILED) return 0;
+
+    memcpy(sig, data + 16, 16);
+    sig[16] = '\0';
+    t = (EgtbTable *) malloc(sizeof(EgtbTable));
+    if (   !t
+        || memcmp(data, EGTB_MAGIC, 4) != 0
+        || ReadU32(data + 4) != EGTB_VERSION
+        || !EgtbInitTable(t, sig)
+        || ReadU32(data + 8) != t->size
+        || EGTB_HEADER_SIZE + 2 * (size_t) t->size > (size_t) st.st_size) {
+        munmap(data, (size_t) st.st_size);
+        free(t);
+        return 0;
+    }
+    t->data = data + EGTB_HEADER_SIZE;
+    t->mapSize = (size_t) st.st_size;
+    if (!EgtbRegister(t)) {
+        munmap(data, t->mapSize);
+        free(t);
+        return 0;
+    }
+    return 1;
+}
+
+int EgtbOpenDir(const char *dir)
+{
+    char path[1024];
+    struct dirent *de;
+    DIR *d = opendir(dir);
+    size_t len;
+
+    if (!d) return tableCount_;
+    while ((de = readdir(d)) != NULL) {
+        len = strlen(de->d_name);
+        if (len < 6 || strcmp(de->d_name + len - 5, ".mqtb") != 0) continue;
+        snprintf(path, sizeof(path), "%s/%s", dir, de->d_name);
+        EgtbOpenFile(path);
+    }
+    closedir(d);
+    return tableCount_;
+}
+
+// ****************************************************************************
+//
+//                              MaxQi
+//
+// ****************************************************************************
+
+int EgtbProbeMove(const char *mqBoard, int mqSide, int *from, int *to, int *dtm)
+{
+    EgtbBoard b, child;
+    int froms[128], tos[128], n, i, v, side, u, r, c;
+    int best = -1, bestScore = 0, score;
+
+    if (!tableCount_) return 0;
+
+    memset(&b, 0, sizeof(b));
+    for (c = 0; c < 9; c++) {
+        for (r = 0; r < 10; r++) {
+            u = mqBoard[16 * c + r] & 31;
+            if (u && mqKind_[u & 15])
+                b.sq[SQ(r, c)] = (signed char) (((u & 16) ? EGTB_SIDE2 : 0) | mqKind_[u & 15]);
+        }
+    }
+    side = mqSide ? EGTB_SIDE2 : 0;
+
+    v = EgtbLookup(&b, side);
+    if (v < 0) return 0;          /* not covered, or a draw: let the search play */
+
+    n = EgtbLegalMoves(&b, side, froms, tos);
+    for (i = 0; i < n; i++) {
+        child = b;
+        EgtbMakeMove(&child, froms[i], tos[i]);
+        v = EgtbLookup(&child, side ^ EGTB_SIDE2);
+        if (v == EGTB_UNKNOWN) return 0;
+        /* Prefer the fastest win, then a draw, then the slowest loss. */
+        if (v == EGTB_DRAW) score = 0;
+        else if (v & 1)     score = -1000 + v;
+        else                score = 1000 - v;
+        if (best < 0 || score > bestScore) best = i, bestScore = score;
+    }
+    if (best < 0) return 0;
+
+    *from = 16 * (froms[best] % 9) + froms[best] / 9;
+    *to = 16 * (tos[best] % 9) + tos[best] / 9;
+    *dtm = bestScore > 0 ? 1000 - bestScore + 1 : bestScore < 0 ? bestScore + 1000 + 1 : 0;
+    return 1;
+}
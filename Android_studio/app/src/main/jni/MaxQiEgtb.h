@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Endgame tablebases (EGTB) of MaxQi.
+ *
+ * A table covers one material signature, e.g. "KRKAA" (King + Chariot vs.
+ * King + 2 Advisors). The stronger side always comes first and plays "up"
+ * (its palace is on rows 7-9), so a position with the stronger side in Black
+ * is probed upside down.
+ *
+ * File "<signature>.mqtb":
+ *   Header (32 bytes): "MQTB", version (u32), positions (u32), reserved (u32),
+ *                      signature (16 chars, NUL padded).
+ *   Data: 2 x positions bytes; the first half with the stronger side to move.
+ *
+ * Each byte holds (distance-to-mate in plies + 1), seen from the side to move:
+ * an odd distance is a win, an even one a loss. 0 is a draw (or an illegal position).
+ */
+
+#ifndef __INCLUDED_MAXQI_EGTB_H__
+#define __INCLUDED_MAXQI_EGTB_H__
+
+#define EGTB_MAGIC        "MQTB"
+#define EGTB_VERSION      1
+#define EGTB_HEADER_SIZE  32
+#define EGTB_MAX_PIECES   6
+#define EGTB_MAX_TABLES   64
+
+#define EGTB_DRAW     (-1)  /* a draw (or an illegal position) */
+#define EGTB_UNKNOWN  (-2)  /* no table covers this material   */
+
+/* Piece kinds. A piece is (side | kind), side = 0 (moves up) or EGTB_SIDE2. */
+enum { EGTB_KING = 1, EGTB_ADVISOR, EGTB_ELEPHANT, EGTB_HORSE,
+       EGTB_CHARIOT, EGTB_CANNON, EGTB_PAWN };
+#define EGTB_SIDE2  8
+
+/* A board of 90 squares (9 * row + column). Row 0 is the top (Black 's back rank). */
+typedef struct {
+    signed char sq[90];
+} EgtbBoard;
+
+typedef struct {
+    char sig[16];
+    int nSlots;
+    int slotSide[EGTB_MAX_PIECES];  /* in table coordinates */
+    int slotKind[EGTB_MAX_PIECES];
+    unsigned long size;             /* positions per side-to-move */
+    unsigned char *data;            /* 2 * size bytes */
+    size_t mapSize;                 /* > 0 if the data is memory-mapped */
+    int maxDtm;
+} EgtbTable;
+
+/* -------- Rules -------- */
+int  EgtbLegalMoves(const EgtbBoard *b, int side, int *from, int *to); /* returns the count */
+int  EgtbInCheck(const EgtbBoard *b, int side);
+void EgtbMakeMove(EgtbBoard *b, int from, int to);
+
+/* -------- Tables -------- */
+/* Compute the signature of the material on the board. Returns 1 if the board
+ * must be flipped (i.e., the stronger side is EGTB_SIDE2), or -1 if the board
+ * has too many pieces. An empty signature means neither side can ever mate. */
+int  EgtbSignature(const EgtbBoard *b, char *sig);
+int  EgtbInitTable(EgtbTable *t, const char *sig);
+long EgtbIndex(const EgtbTable *t, const EgtbBoard *b, int flip); /* -1 if not indexable */
+void EgtbDecode(const EgtbTable *t, unsigned long index, EgtbBoard *b);
+int  EgtbRegister(EgtbTable *t);
+EgtbTable *EgtbFind(const char *sig);
+
+/* The value (distance-to-mate, EGTB_DRAW or EGTB_UNKNOWN) with 'side' to move. */
+int  EgtbLookup(const EgtbBoard *b, int side);
+
+/* Map all "*.mqtb" files in a folder. Returns the number of tables. */
+int  EgtbOpenDir(const char *dir);
+int  EgtbOpenFile(const char *path);
+
+/* -------- MaxQi -------- */
+/* Choose the best move for a MaxQi board (16 * column + row, 0x88-style) with
+ * 'mqSide' (0 = Red, 16 = Black) to move. Returns 1 only for a won or lost position. */
+int  EgtbProbeMove(const char *mqBoard, int mqSide, int *from, int *to, int *dtm);
+
+#endif /* __INCLUDED_MAXQI_EGTB_H__ */
@@ -0,0 +1,231 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * A host tool (NOT part of the Android build) that generates MaxQi 's endgame
+ * tablebases by retrograde analysis.
+ *
+ * Build & run:
+ *   $ cc -O2 -o MaxQiEgtbBuilder MaxQiEgtbBuilder.c MaxQiEgtb.c
+ *   $ ./MaxQiEgtbBuilder ../assets/egtb [signature ...]
+ *
+ * Without signatures, a default set of common endings is generated. The tables
+ * reached by captures (e.g., "KRKA" from "KRKAA") are generated first; tables
+ * already in the output folder are reused.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include "MaxQiEgtb.h"
+
+static const char *defaultSignatures_[] = {
+    "KRKAA", "KRKEE", "KRKAE", "KRKH", "KHPK", "KCAK", "KPPK", NULL
+};
+
+static const char *outDir_ = ".";
+
+/* A board with the given material, on arbitrary squares: enough for EgtbSignature(). */
+static int Canonical(const char *sig, char *out)
+{
+    static const char kinds[] = " KAEHRCP";
+    EgtbBoard b;
+    int side = -1, sq = 0;
+    const char *p, *k;
+
+    memset(&b, 0, sizeof(b));
+    for (p = sig; *p; p++) {
+        k = strchr(kinds + 1, *p);
+        if (!k || sq == 90) return -1;
+        if (*p == 'K') side++;
+        if (side < 0 || side > 1) return -1;
+        b.sq[sq++] = (signed char) ((side ? EGTB_SIDE2 : 0) | (int) (k - kinds));
+    }
+    if (side != 1) return -1;
+    return EgtbSignature(&b, out);
+}
+
+static void WriteU32(FILE *f, unsigned int v)
+{
+    int i;
+    for (i = 0; i < 4; i++) fputc((v >> (8 * i)) & 0xFF, f);
+}
+
+static int WriteTable(const EgtbTable *t)
+{
+    char path[4096], sig[16];
+    FILE *f;
+
+    snprintf(path, sizeof(path), "%s/%s.mqtb", outDir_, t->sig);
+    f = fopen(path, "wb");
+    if (!f) { perror(path); return 0; }
+    memset(sig, 0, sizeof(sig));
+    strcpy(sig, t->sig);
+    fwrite(EGTB_MAGIC, 1, 4, f);
+    WriteU32(f, EGTB_VERSION);
+    WriteU32(f, (unsigned int) t->size);
+    WriteU32(f, 0);
+    fwrite(sig, 1, 16, f);
+    fwrite(t->data, 1, 2 * t->size, f);
+    fclose(f);
+    return 1;
+}
+
+/*
+ * Retrograde analysis, one distance at a time:
+ *   - A mated (or stalemated) side to move has lost in 0 plies.
+ *   - Round d: a position is won in d plies if a move reaches a loss in d-1
+ *     plies; lost in d plies if every move reaches a win, the longest in d-1.
+ * Captures leave the table, and are looked up in the smaller tables.
+ * Whatever is still undecided at the end is a draw.
+ */
+static int Generate(EgtbTable *t)
+{
+    unsigned long n = t->size, i;
+    unsigned char *state;           /* 0 = undecided, 1 = decided, 2 = illegal */
+    int froms[128], tos[128];
+    int half, side, m, count, v, d, lastChange = 0, maxSub = 0, k, wins, losses;
+    int changed, canWin, allLose, longest;
+    EgtbBoard b, child;
+    EgtbTable *sub;
+    char subSig[EGTB_MAX_PIECES + 3];
+
+    t->data = (unsigned char *) calloc(2, n);
+    state = (unsigned char *) calloc(2, n);
+    if (!t->data || !state) { fprintf(stderr, "Out of memory\n"); return 0; }
+
+    for (k = 0; k < (int) strlen(t->sig); k++) {      /* the longest mate in a smaller table */
+        char smaller[16];
+        if (t->sig[k] == 'K') continue;
+        strcpy(smaller, t->sig);
+        memmove(smaller + k, smaller + k + 1, strlen(smaller + k));
+        if (Canonical(smaller, subSig) >= 0 && (sub = EgtbFind(subSig)) && sub->maxDtm > maxSub)
+            maxSub = sub->maxDtm;
+    }
+
+    for (half = 0; half < 2; half++) {
+        side = half ? EGTB_SIDE2 : 0;
+        for (i = 0; i < n; i++) {
+            EgtbDecode(t, i, &b);
+            if (   EgtbIndex(t, &b, 0) != (long) i      /* overlapping, or duplicates out of order */
+                || EgtbInCheck(&b, side ^ EGTB_SIDE2)) {
+                state[half * n + i] = 2;
+                continue;
+            }
+            if (EgtbLegalMoves(&b, side, froms, tos) == 0) {
+                t->data[half * n + i] = 1;
+                state[half * n + i] = 1;
+            }
+        }
+    }
+
+    for (d = 1; d - lastChange <= 2 || d <= maxSub + 2; d++) {
+        if (d > 254) { fprintf(stderr, "%s: distance overflow\n", t->sig); return 0; }
+        changed = 0;
+        for (half = 0; half < 2; half++) {
+            side = half ? EGTB_SIDE2 : 0;
+            for (i = 0; i < n; i++) {
+                if (state[half * n + i]) continue;
+                EgtbDecode(t, i, &b);
+                count = EgtbLegalMoves(&b, side, froms, tos);
+                canWin = 0; allLose = 1; longest = -1;
+                for (m = 0; m < count; m++) {
+                    child = b;
+                    EgtbMakeMove(&child, froms[m], tos[m]);
+                    v = EgtbLookup(&child, side ^ EGTB_SIDE2);
+                    if (v == EGTB_UNKNOWN) {
+                        EgtbSignature(&child, subSig);
+                        fprintf(stderr, "%s: missing table %s\n", t->sig, subSig);
+                        return 0;
+                    }
+                    if (v >= 0 && !(v & 1) && v == d - 1) { canWin = 1; break; }
+                    if (v < 0 || !(v & 1)) allLose = 0;
+                    else if (v > longest) longest = v;
+                }
+                if (canWin || (allLose && longest == d - 1)) {
+                    t->data[half * n + i] = (unsigned char) (d + 1);
+                    state[half * n + i] = 1;
+                    changed = 1;
+                }
+            }
+        }
+        if (changed) lastChange = d;
+    }
+
+    wins = losses = 0;
+    t->maxDtm = 0;
+    for (i = 0; i < 2 * n; i++) {
+        if (!t->data[i]) continue;
+        if ((t->data[i] - 1) & 1) wins++; else losses++;
+        if (t->data[i] - 1 > t->maxDtm) t->maxDtm = t->data[i] - 1;
+    }
+    printf("%s: %lu positions, %d wins, %d losses, longest mate %d plies\n",
+           t->sig, 2 * n, wins, losses, t->maxDtm);
+    free(state);
+    return 1;
+}
+
+static int Build(const char *signature)
+{
+    char sig[EGTB_MAX_PIECES + 3], smaller[16], path[4096];
+    EgtbTable *t;
+    int k;
+
+    if (Canonical(signature, sig) < 0) {
+        fprintf(stderr, "Invalid signature: %s\n", signature);
+        return 0;
+    }
+    if (!sig[0] || EgtbFind(sig)) return 1;         /* a dead draw, or done */
+
+    snprintf(path, sizeof(path), "%s/%s.mqtb", outDir_, sig);
+    if (EgtbOpenFile(path)) return 1;
+
+    for (k = 0; sig[k]; k++) {                       /* the tables reached by captures */
+        if (sig[k] == 'K') continue;
+        strcpy(smaller, sig);
+        memmove(smaller + k, smaller + k + 1, strlen(smaller + k));
+        if (!Build(smaller)) return 0;
+    }
+
+    t = (EgtbTable *) malloc(sizeof(EgtbTable));
+    if (!t || !EgtbInitTable(t, sig)) { fprintf(stderr, "Invalid signature: %s\n", sig); return 0; }
+    EgtbRegister(t);
+    return Generate(t) && WriteTable(t);
+}
+
+int main(int argc, char *argv[])
+{
+    const char **sigs = defaultSignatures_;
+    clock_t start = clock();
+
+    if (argc < 2) {
+        fprintf(stderr, "Usage: %s <out-dir> [signature ...]\n", argv[0]);
+        return 1;
+    }
+    outDir_ = argv[1];
+    if (argc > 2) sigs = (const char **) argv + 2;
+
+    for ( ; *sigs; sigs++) {
+        if (!Build(*sigs)) return 1;
+    }
+    printf("Done in %.1f s\n", (double) (clock() - start) / CLOCKS_PER_SEC);
+    return 0;
+}
@@ -0,0 +1,331 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MaxQi as a standalone engine process that speaks UCCI over stdin/stdout
+ * (see UcciEngine.java, or use it with any UCCI interface).
+ *
+ * Build (host):
+ *   $ cc -O2 -DMAXQI_UCCI -o MaxQi MaxQiUcci.c MaxQi.c MaxQiBook.c MaxQiEgtb.c
+ *
+ * Commands:
+ *   ucci
+ *   isready
+ *   setoption {bookfiles <file> | egtbpaths <dir> | randomseed <n>}
+ *   position {startpos | fen <fen>} [moves <move> ...]
+ *   go {depth <d> | nodes <n> | time <t> [movestogo <m>] [increment <i>] | infinite}
+ *   stop
+ *   quit
+ *
+ * There is no pondering, nor draw offers: "go ponder" is answered with
+ * "nobestmove" (no search), and "ponderhit" is ignored as the other unknown
+ * commands. A draw offered with "go draw" is declined (a normal search).
+ *
+ * Moves are in the ICCS notation (e.g., "h2e2"): the files 'a'...'i' are the
+ * columns 0...8 of the App, the ranks '0'...'9' count from Red 's side.
+ *
+ * NOTE: The search looks at its input only between two iterations, so "stop"
+ *       (and "isready") are answered when the current iteration is done.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <stdarg.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/select.h>
+
+#include "MaxQiBook.h"
+#include "MaxQiEgtb.h"
+
+/* The engine (MaxQi.c, compiled with MAXQI_UCCI). */
+extern int Side, MaxDepth, MaxNodes, TimeLeft, MovesLeft, TimeInc;
+extern unsigned int FixedSeed;
+extern volatile int tlim;
+extern struct SearchStats {int depth,score,nodes,elapsed,probes,hits;char pv[128];} Stats;
+int  GetTickCount();
+void SeedRandom(unsigned int seed);
+void InitGame();
+int  SetPosition(const char *fen);
+void ClearGameHistory();
+void _OnOpponentMove(const char *move);
+const char *_GenerateNextMove();
+
+#define MAX_LINE       8192
+#define MAX_INPUT      (4 * MAX_LINE)
+#define NO_TIME_LIMIT  (1 << 30)
+
+static char input_[MAX_INPUT];   /* read from stdin, not yet handled     */
+static int  inputLength_ = 0;
+static char deferred_[MAX_INPUT];/* commands received during a search    */
+static int  deferredLength_ = 0;
+static int  quit_ = 0;
+
+/* The position of the engine: the start, and the moves played since. */
+static char base_[MAX_LINE];     /* "startpos" or "fen ..."              */
+static char played_[MAX_INPUT];  /* ICCS moves, each followed by a blank */
+
+static void Send(const char *format, ...)
+{
+    va_list args;
+    va_start(args, format);
+    vprintf(format, args);
+    va_end(args);
+    putchar('\n');
+    fflush(stdout);
+}
+
+/* Read what stdin has (or wait for it if 'block'). Returns 0 at the end of input. */
+static int ReadInput(int block)
+{
+    fd_set fds;
+    struct timeval timeout = { 0, 0 };
+    int n;
+
+    if (!block) {
+        FD_ZERO(&fds);
+        FD_SET(0, &fds);
+        if (select(1, &fds, NULL, NULL, &timeout) <= 0) return 1;
+    }
+    if (inputLength_ == MAX_INPUT - 1) inputLength_ = 0; /* a line too long: drop it */
+    n = read(0, input_ + inputLength_, MAX_INPUT - 1 - inputLength_);
+    if (n <= 0) return 0;
+    inputLength_ += n;
+    return 1;
+}
+
+/* Take the next complete line out of a buffer. Returns 0 if there is none. */
+static int TakeLine(char *buffer, int *length, char *line)
+{
+    char *end = memchr(buffer, '\n', *length);
+    int n;
+
+    if (!end) return 0;
+    n = end - buffer;
+    if (n >= MAX_LINE) n = MAX_LINE - 1;
+    memcpy(line, buffer, n);
+    line[n] = '\0';
+    if (n > 0 && line[n - 1] == '\r') line[n - 1] = '\0';
+    n = end + 1 - buffer;
+    memmove(buffer, end + 1, *length - n);
+    *length -= n;
+    return 1;
+}
+
+/* Wait for the next command. Returns 0 at the end of input. */
+static int NextCommand(char *line)
+{
+    for (;;) {
+        if (TakeLine(deferred_, &deferredLength_, line)) return 1;
+        if (TakeLine(input_, &inputLength_, line)) return 1;
+        if (!ReadInput(1)) return 0;
+    }
+}
+
+/* During a search: handle "stop", "quit" and "isready"; keep the others for later. */
+static void PollInput()
+{
+    char line[MAX_LINE];
+
+    if (!ReadInput(0)) {
+        quit_ = 1, tlim = 0;               /* the end of input: as "quit" */
+        return;
+    }
+    while (TakeLine(input_, &inputLength_, line)) {
+        if (!strcmp(line, "stop")) tlim = 0;
+        else if (!strcmp(line, "quit")) quit_ = 1, tlim = 0;
+        else if (!strcmp(line, "isready")) Send("readyok");
+        else if (deferredLength_ + (int) strlen(line) + 1 < MAX_INPUT) {
+            deferredLength_ += sprintf(deferred_ + deferredLength_, "%s\n", line);
+        }
+    }
+}
+
+/* "h2e2" => "7727" (the engine 's "col,row,col,row"), or 0 if malformed. */
+static int FromIccs(const char *iccs, char *move)
+{
+    int i;
+    for (i = 0; i < 4; i += 2) {
+        if (iccs[i] < 'a' || iccs[i] > 'i' || iccs[i+1] < '0' || iccs[i+1] > '9') return 0;
+        move[i] = '0' + (iccs[i] - 'a');
+        move[i+1] = '0' + ('9' - iccs[i+1]);
+    }
+    move[4] = '\0';
+    return iccs[4] == '\0' || iccs[4] == ' ';
+}
+
+/* The reverse of FromIccs(), for a list of moves separated by blanks. */
+static void ToIccs(const char *moves, char *iccs)
+{
+    for (; moves[0] && moves[1] && moves[2] && moves[3]; moves += 4) {
+        *iccs++ = 'a' + (moves[0] - '0');
+        *iccs++ = '0' + ('9' - moves[1]);
+        *iccs++ = 'a' + (moves[2] - '0');
+        *iccs++ = '0' + ('9' - moves[3]);
+        if (moves[4] == ' ') *iccs++ = ' ', moves++;
+    }
+    *iccs = '\0';
+}
+
+/* Called by the engine after each iteration of the search. */
+void ReportProgress()
+{
+    char pv[2 * sizeof(Stats.pv)];
+    if (Stats.depth > 0) {                 /* not the first 2 (mini) ones */
+        ToIccs(Stats.pv, pv);
+        Send("info depth %d score %d nodes %d time %d pv %s",
+             Stats.depth, Stats.score, Stats.nodes, Stats.elapsed, pv);
+    }
+    PollInput();
+}
+
+/* Play a move on the engine 's board. Returns 0 if it is not legal. */
+static int PlayMove(const char *iccs)
+{
+    char move[5];
+    int side = Side;
+
+    if (!FromIccs(iccs, move)) return 0;
+    _OnOpponentMove(move);
+    return Side != side;
+}
+
+static void Position(char *args)
+{
+    char *moves = strstr(args, " moves ");
+    char list[MAX_INPUT];
+    char *token;
+    int n = 0, length;
+
+    if (moves) *moves = '\0', moves += 7;
+    if (strncmp(args, "startpos", 8) && strncmp(args, "fen ", 4)) return;
+
+    /* The moves, each followed by a blank (as in played_). */
+    list[0] = '\0';
+    for (token = moves ? strtok(moves, " ") : NULL; token; token = strtok(NULL, " ")) {
+        if (n + (int) strlen(token) + 2 >= MAX_INPUT) break;
+        n += sprintf(list + n, "%s ", token);
+    }
+
+    /* Play only the new moves if the game goes on; otherwise, start again. */
+    length = strlen(played_);
+    if (strcmp(args, base_) || strncmp(list, played_, length)) {
+        InitGame();
+        ClearGameHistory();
+        if (!strncmp(args, "fen ", 4) && !SetPosition(args + 4)) {
+            Send("info string bad fen: %s", args + 4);
+        }
+        snprintf(base_, sizeof(base_), "%s", args);
+        played_[0] = '\0';
+        length = 0;
+    }
+    for (token = strtok(list + length, " "); token; token = strtok(NULL, " ")) {
+        if (!PlayMove(token)) {
+            Send("info string illegal move: %s", token);
+            break;
+        }
+        strcat(played_, token);
+        strcat(played_, " ");
+    }
+}
+
+static void Go(char *args)
+{
+    char *token, *value;
+    int depth = 0, nodes = 0, time = -1, movesToGo = 0, increment = 0;
+    const char *move;
+    char iccs[8];
+
+    for (token = strtok(args, " "); token; token = strtok(NULL, " ")) {
+        if (!strcmp(token, "ponder")) {    /* not supported (see above) */
+            Send("info string ponder is not supported");
+            Send("nobestmove");
+            return;
+        }
+        if (!strcmp(token, "infinite") || !strcmp(token, "draw")) continue;
+        if (strcmp(token, "depth") && strcmp(token, "nodes") && strcmp(token, "time")
+            && strcmp(token, "movestogo") && strcmp(token, "increment")) continue;
+        if (!(value = strtok(NULL, " "))) break;
+        if (!strcmp(token, "depth")) depth = atoi(value); /* "infinite" = 0 */
+        else if (!strcmp(token, "nodes")) nodes = atoi(value);
+        else if (!strcmp(token, "time")) time = atoi(value);
+        else if (!strcmp(token, "movestogo")) movesToGo = atoi(value);
+        else increment = atoi(value);
+    }
+
+    MaxDepth = depth > 0 ? depth + 2 : 60;  /* see MaxDepth in MaxQi.c */
+    MaxNodes = nodes;
+    TimeLeft = time >= 0 ? time : NO_TIME_LIMIT;
+    MovesLeft = movesToGo;
+    TimeInc = increment;
+
+    move = _GenerateNextMove();            /* (it plays the move, too) */
+    if (!strcmp(move, "none")) {
+        Send("nobestmove");
+        return;
+    }
+    ToIccs(move, iccs);
+    strcat(played_, iccs);
+    strcat(played_, " ");
+    Send("bestmove %s", iccs);
+}
+
+static void SetOption(char *args)
+{
+    char *value = strchr(args, ' ');
+    int seed;
+
+    if (!value) return;
+    *value++ = '\0';
+    if (!strcmp(args, "bookfiles")) {
+        if (!BookOpen(value)) Send("info string failed to open the book: %s", value);
+    } else if (!strcmp(args, "egtbpaths")) {
+        if (EgtbOpenDir(value) <= 0) Send("info string no tablebases in: %s", value);
+    } else if (!strcmp(args, "randomseed")) {
+        seed = atoi(value);
+        FixedSeed = (unsigned int) seed;
+        SeedRandom(FixedSeed ? FixedSeed : (unsigned int) GetTickCount());
+    }
+}
+
+int main(void)
+{
+    static char line[MAX_LINE];
+
+    InitGame();
+    strcpy(base_, "startpos");
+    while (!quit_ && NextCommand(line)) {
+        if (!strcmp(line, "ucci")) {
+            Send("id name MaxQi");
+            Send("id author H.G. Muller");
+            Send("option bookfiles type string default <empty>");
+            Send("option egtbpaths type string default <empty>");
+            Send("option randomseed type spin min 0 max 2147483647 default 0");
+            Send("ucciok");
+        }
+        else if (!strcmp(line, "isready")) Send("readyok");
+        else if (!strncmp(line, "setoption ", 10)) SetOption(line + 10);
+        else if (!strncmp(line, "position ", 9)) Position(line + 9);
+        else if (!strncmp(line, "go", 2) && (line[2] == ' ' || !line[2])) Go(line + 2);
+        else if (!strcmp(line, "quit")) quit_ = 1;
+        /* Others (e.g., "stop" when not searching) are ignored. */
+    }
+    Send("bye");
+    return 0;
+}
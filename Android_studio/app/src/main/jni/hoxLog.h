@@ -11,12 +11,20 @@
 #ifndef __INCLUDED_HOX_LOG_H__
 #define __INCLUDED_HOX_LOG_H__
 
+#ifdef __ANDROID__
 #include <android/log.h>
 
 #define  LOG_TAG    "libReferee"
 #define  LOGI(...)  __android_log_print(ANDROID_LOG_INFO,LOG_TAG,__VA_ARGS__)
 #define  LOGW(...)  __android_log_print(ANDROID_LOG_WARN,LOG_TAG,__VA_ARGS__)
 #define  LOGE(...)  __android_log_print(ANDROID_LOG_ERROR,LOG_TAG,__VA_ARGS__)
+#else  /* a host build (e.g., for the self-play runner) */
+#include <stdio.h>
+
+#define  LOGI(...)  ((void) 0)
+#define  LOGW(...)  fprintf(stderr,__VA_ARGS__)
+#define  LOGE(...)  fprintf(stderr,__VA_ARGS__)
+#endif
 
 enum hoxLogLevel
 {
@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MessageRingTest {
+
+    private static MessageInfo message(String content) {
+        final MessageInfo messageInfo = new MessageInfo(
+                MessageInfo.MessageType.MESSAGE_TYPE_CHAT_IN_TABLE, "alice");
+        messageInfo.content = content;
+        return messageInfo;
+    }
+
+    private static MessageRing ring(int capacity, MessageInfo... messages) {
+        final MessageRing ring = new MessageRing(capacity);
+        for (MessageInfo messageInfo : messages) {
+            ring.add(messageInfo);
+        }
+        return ring;
+    }
+
+    @Test
+    public void theOldestMessageIsEvictedWhenNoneIsRead() {
+        final MessageInfo m1 = message("1"), m2 = message("2"), m3 = message("3");
+        final MessageRing ring = ring(2, m1, m2);
+
+        assertSame(m1, ring.add(m3));
+        assertEquals(Arrays.asList(m2, m3), ring.toList());
+        assertSame(m2, ring.get(0));
+    }
+
+    @Test
+    public void theOldestReadMessageIsEvictedFirst() {
+        final MessageInfo m1 = message("1"), m2 = message("2"), m3 = message("3"),
+                m4 = message("4");
+        final MessageRing ring = ring(3, m1, m2, m3);
+        m2.markRead();
+
+        assertSame(m2, ring.add(m4)); // m1 is kept: not read yet.
+        assertEquals(Arrays.asList(m1, m3, m4), ring.toList());
+    }
+
+    @Test
+    public void removeAndSetCapacityKeepTheOrder() {
+        final MessageInfo m1 = message("1"), m2 = message("2"), m3 = message("3"),
+                m4 = message("4");
+        final MessageRing ring = ring(3, m1, m2, m3);
+        ring.add(m4); // wraps around
+
+        assertSame(m3, ring.remove(m3.getId()));
+        assertNull(ring.remove(m1.getId())); // already evicted
+        assertEquals(Arrays.asList(m2, m4), ring.toList());
+
+        final List<MessageInfo> evicted = ring.setCapacity(1);
+        assertEquals(Arrays.asList(m2), evicted);
+        assertEquals(Arrays.asList(m4), ring.toList());
+        assertEquals(1, ring.capacity());
+        assertSame(m4, ring.add(message("5")));
+    }
+}
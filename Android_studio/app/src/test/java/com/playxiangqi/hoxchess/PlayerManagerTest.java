@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerManagerTest {
+
+    private static List<PlayerInfo> players(String... pids) {
+        final List<PlayerInfo> players = new ArrayList<PlayerInfo>();
+        for (String pid : pids) {
+            players.add(new PlayerInfo(pid, 1500));
+        }
+        return players;
+    }
+
+    private static List<TableInfo> tables(String... tableStrs) {
+        final List<TableInfo> tables = new ArrayList<TableInfo>();
+        for (String tableStr : tableStrs) {
+            tables.add(new TableInfo(tableStr));
+        }
+        return tables;
+    }
+
+    @Test
+    public void newTablesAfterLoginClearTheStaleFlag() {
+        final PlayerManager playerManager = new PlayerManager();
+        playerManager.setInitialPlayers(players("alice", "bob")); // I_PLAYERS at login
+        playerManager.setTables(tables("1;0;0;900/180/20;900/180/20;900/180/20;alice;1500;bob;1500"));
+        assertFalse(playerManager.isStale());
+
+        playerManager.markStale(); // the lobby is opened again
+        assertTrue(playerManager.isStale());
+
+        playerManager.setTables(tables("1;0;0;900/180/20;900/180/20;900/180/20;alice;1500;bob;1500",
+                "2;0;0;600/120/20;600/120/20;600/120/20;carol;1500;dave;1500")); // LIST
+        assertFalse(playerManager.isStale());
+    }
+
+    @Test
+    public void playersAreNotMarkedStale() {
+        final PlayerManager playerManager = new PlayerManager();
+        playerManager.setInitialPlayers(players("alice"));
+        playerManager.markStale(); // no tables yet
+        assertFalse(playerManager.isStale());
+    }
+
+    @Test
+    public void snapshotIsTakenOnlyAfterAChange() {
+        final PlayerManager playerManager = new PlayerManager();
+        playerManager.setInitialPlayers(players("alice", "bob"));
+        final LobbySnapshot snapshot = playerManager.publishSnapshot();
+        assertSame(snapshot, playerManager.publishSnapshot());
+        assertSame(snapshot, playerManager.getSnapshot());
+
+        playerManager.addPlayer(new PlayerInfo("carol", 1600));
+        final LobbySnapshot newSnapshot = playerManager.publishSnapshot();
+        assertNotSame(snapshot, newSnapshot);
+        assertEquals(3, newSnapshot.players.size());
+        assertSame(snapshot.findPlayer("alice"), newSnapshot.findPlayer("alice")); // unchanged
+        assertEquals(2, snapshot.players.size());
+    }
+
+    @Test
+    public void snapshotIsPublishedOncePerBatch() {
+        final PlayerManager playerManager = new PlayerManager();
+        playerManager.setInitialPlayers(players("alice", "bob"));
+        final LobbySnapshot snapshot = playerManager.publishSnapshot();
+
+        // A batch of events: the readers keep the last snapshot until it is published.
+        playerManager.addPlayer(new PlayerInfo("carol", 1600));
+        playerManager.updatePlayerRating("alice", 1700);
+        playerManager.removePlayer("bob");
+        assertSame(snapshot, playerManager.getSnapshot());
+
+        final LobbySnapshot newSnapshot = playerManager.publishSnapshot(); // as the posted task
+        assertSame(newSnapshot, playerManager.getSnapshot());
+        assertEquals(2, newSnapshot.players.size());
+        assertEquals(1700, newSnapshot.findPlayer("alice").rating);
+        assertEquals(1500, snapshot.findPlayer("alice").rating);
+    }
+}
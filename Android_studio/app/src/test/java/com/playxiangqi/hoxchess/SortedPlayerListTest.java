@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class SortedPlayerListTest {
+
+    // Records the changes reported to the listener, e.g. "inserted 0".
+    private static class Recorder implements SortedPlayerList.Listener {
+        final List<String> events = new ArrayList<String>();
+
+        public void onPlayerInserted(int position) { events.add("inserted " + position); }
+        public void onPlayerRemoved(int position) { events.add("removed " + position); }
+        public void onPlayerMoved(int fromPosition, int toPosition) {
+            events.add("moved " + fromPosition + " " + toPosition);
+        }
+        public void onPlayerChanged(int position) { events.add("changed " + position); }
+        public void onPlayersReset() { events.add("reset"); }
+    }
+
+    private static List<String> pids(SortedPlayerList players) {
+        final List<String> pids = new ArrayList<String>();
+        for (PlayerInfo player : players.toList()) {
+            pids.add(player.pid);
+        }
+        return pids;
+    }
+
+    @Test
+    public void playersAreSortedByRatingThenByPid() {
+        final SortedPlayerList players = new SortedPlayerList();
+        players.setAll(Arrays.asList(new PlayerInfo("carol", 1500), new PlayerInfo("alice", 1500),
+                new PlayerInfo("bob", 1700), new PlayerInfo("alice", 1500))); // a duplicate
+        assertEquals(Arrays.asList("bob", "alice", "carol"), pids(players));
+        assertEquals(1, players.indexOf("alice"));
+        assertEquals(-1, players.indexOf("dave"));
+    }
+
+    @Test
+    public void eachChangeIsReportedWithItsPositions() {
+        final SortedPlayerList players = new SortedPlayerList();
+        players.setAll(Arrays.asList(new PlayerInfo("alice", 1500), new PlayerInfo("bob", 1400)));
+        final Recorder recorder = new Recorder();
+        players.addListener(recorder);
+
+        players.put("carol", 1600);      // a new player, at the top
+        players.put("bob", 1700);        // a new rating: from the bottom to the top
+        players.put("alice", 1500);      // the same rating: nothing to report
+        players.notifyChanged("alice");
+        players.remove("carol");
+        assertFalse(players.remove("carol"));
+
+        assertEquals(Arrays.asList("inserted 0", "moved 2 0", "changed 0", "changed 2",
+                "removed 1"), recorder.events);
+        assertEquals(Arrays.asList("bob", "alice"), pids(players));
+        assertNull(players.find("carol"));
+        assertEquals(1700, players.find("bob").rating);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TableIndexTest {
+
+    // "id;?;rated (0 = yes);itimes;red-times;black-times;red;rating;black;rating"
+    private static TableInfo table(String id, String itimes, String red, int redRating,
+                                   String black, int blackRating) {
+        return new TableInfo(id + ";0;0;" + itimes + ";" + itimes + ";" + itimes + ";"
+                + red + ";" + redRating + ";" + black + ";" + blackRating);
+    }
+
+    private static List<String> ids(List<TableInfo> tables) {
+        final List<String> ids = new ArrayList<String>();
+        for (TableInfo table : tables) {
+            ids.add(table.tableId);
+        }
+        return ids;
+    }
+
+    private static TableIndex.Query query(Enums.ColorEnum openSeat) {
+        return new TableIndex.Query(openSeat);
+    }
+
+    @Test
+    public void tablesAreFoundByTheirOpenSeat() {
+        final TableIndex index = new TableIndex();
+        index.setAll(Arrays.asList(
+                table("1", "900/180/20", "alice", 1500, "", 0),     // Black open
+                table("2", "900/180/20", "", 0, "bob", 1600),       // Red open
+                table("3", "900/180/20", "", 0, "", 0),             // both open
+                table("4", "900/180/20", "carol", 1700, "dave", 1800))); // full
+
+        // By the rating of the opponent: none (both seats open) first.
+        assertEquals(Arrays.asList("3", "1"), ids(index.find(query(Enums.ColorEnum.COLOR_BLACK))));
+        assertEquals(Arrays.asList("3", "2"), ids(index.find(query(Enums.ColorEnum.COLOR_RED))));
+        assertEquals(3, index.find(query(Enums.ColorEnum.COLOR_NONE)).size()); // each once
+    }
+
+    @Test
+    public void tablesAreFoundByTheRatingOfTheOpponent() {
+        final TableIndex index = new TableIndex();
+        index.setAll(Arrays.asList(
+                table("1", "900/180/20", "alice", 1400, "", 0),
+                table("2", "900/180/20", "bob", 1600, "", 0),
+                table("3", "900/180/20", "carol", 1500, "", 0),
+                table("4", "600/120/20", "dave", 1500, "", 0),
+                table("5", "900/180/20", "", 0, "", 0)));
+
+        final TableIndex.Query query =
+                query(Enums.ColorEnum.COLOR_BLACK).withRatingBand(1450, 1600);
+        query.itimes = "900/180/20";
+        assertEquals(Arrays.asList("3", "2"), ids(index.find(query))); // the lowest first
+
+        assertEquals(2, index.find(query(Enums.ColorEnum.COLOR_BLACK)
+                .withRatingBand(1500, 1500)).size()); // any initial times
+        assertTrue(index.find(query(Enums.ColorEnum.COLOR_BLACK)
+                .withRatingBand(1700, 1600)).isEmpty());
+        assertEquals(Arrays.asList("5"), ids(index.find(query(Enums.ColorEnum.COLOR_BLACK)
+                .withRatingBand(TableIndex.NO_OPPONENT, TableIndex.NO_OPPONENT))));
+    }
+
+    @Test
+    public void updateFollowsTheSeats() {
+        final TableInfo table = table("1", "900/180/20", "alice", 1500, "", 0);
+        final TableIndex index = new TableIndex();
+        index.setAll(Arrays.asList(table));
+
+        table.onPlayerJoined("bob", 1600, Enums.ColorEnum.COLOR_BLACK); // now full
+        index.update(table);
+        assertTrue(index.find(query(Enums.ColorEnum.COLOR_NONE)).isEmpty());
+
+        table.onPlayerLeft("alice"); // Red open, against bob
+        index.update(table);
+        assertTrue(index.find(query(Enums.ColorEnum.COLOR_BLACK)).isEmpty());
+        assertEquals(Arrays.asList("1"), ids(index.find(
+                query(Enums.ColorEnum.COLOR_RED).withRatingBand(1600, 1600))));
+    }
+
+    @Test
+    public void removedTablesAreNotFound() {
+        final TableInfo table1 = table("1", "900/180/20", "alice", 1500, "", 0);
+        final TableInfo table2 = table("2", "900/180/20", "bob", 1500, "", 0);
+        final TableIndex index = new TableIndex();
+        index.setAll(Arrays.asList(table1, table2));
+
+        index.remove(table1);
+        index.remove(table1); // not indexed any more: no-op
+        assertEquals(Arrays.asList("2"), ids(index.find(query(Enums.ColorEnum.COLOR_BLACK))));
+
+        index.clear();
+        assertTrue(index.find(query(Enums.ColorEnum.COLOR_NONE)).isEmpty());
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * The JNI glue of the self-play runner 's referee (a host build, NOT part of the App).
+ * It uses the same hoxReferee as the App (see ../../app/src/main/jni/Referee.cpp).
+ */
+
+#include <jni.h>
+
+#include "hoxReferee.h"
+
+static hoxReferee *referee_ = NULL;
+
+extern "C" {
+
+    JNIEXPORT jint JNICALL
+    Java_com_playxiangqi_hoxchess_selfplay_HostReferee_nativeResetGame(JNIEnv *env, jobject thiz)
+    {
+        if (referee_ == NULL) referee_ = new hoxReferee();
+        referee_->resetGame();
+        return 0;
+    }
+
+    /*
+     * @return hoxGAME_STATUS_UNKNOWN if the move is NOT valid.
+     */
+    JNIEXPORT jint JNICALL
+    Java_com_playxiangqi_hoxchess_selfplay_HostReferee_nativeValidateMove( JNIEnv *env, jobject thiz,
+                                                                          jint row1, jint col1,
+                                                                          jint row2, jint col2 )
+    {
+        hoxMove move;
+        hoxPosition fromPosition(col1, row1);
+        move.newPosition = hoxPosition(col2, row2);
+
+        if ( referee_ == NULL || ! referee_->_getPieceAtPosition(fromPosition, move.piece) )
+        {
+            return hoxGAME_STATUS_UNKNOWN;
+        }
+
+        hoxGameStatus status = hoxGAME_STATUS_UNKNOWN;
+        if ( ! referee_->validateMove( move, status ))
+        {
+            return hoxGAME_STATUS_UNKNOWN;
+        }
+        return status;
+    }
+
+}
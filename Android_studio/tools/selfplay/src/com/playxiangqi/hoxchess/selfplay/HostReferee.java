@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess.selfplay;
+
+/**
+ * The native referee (hoxReferee) without the Android dependencies of
+ * com.playxiangqi.hoxchess.Referee.
+ *
+ *  NOTE: Like the App 's referee, it is a single global instance (per process).
+ */
+class HostReferee {
+
+    // The native referee 's game-status (the same as in com.playxiangqi.hoxchess.Referee).
+    public final static int hoxGAME_STATUS_UNKNOWN = -1;
+    public final static int hoxGAME_STATUS_RED_WIN = 3;
+    public final static int hoxGAME_STATUS_BLACK_WIN = 4;
+    public final static int hoxGAME_STATUS_DRAWN = 5;
+
+    public void resetGame() {
+        nativeResetGame();
+    }
+
+    /**
+     * @return The game status after the move, or hoxGAME_STATUS_UNKNOWN if it is NOT valid.
+     */
+    public int validateMove(int row1, int col1, int row2, int col2) {
+        return nativeValidateMove(row1, col1, row2, col2);
+    }
+
+    // ****************************** Native code **********************************
+    private native int nativeResetGame();
+    private native int nativeValidateMove(int row1, int col1, int row2, int col2);
+
+    static {
+        System.loadLibrary("SelfPlayReferee");
+    }
+    // *****************************************************************************
+}
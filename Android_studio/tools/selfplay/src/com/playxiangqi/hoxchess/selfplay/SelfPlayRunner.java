@@ -0,0 +1,418 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess.selfplay;
+
+import com.playxiangqi.hoxchess.AIEngine;
+import com.playxiangqi.hoxchess.UcciEngine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A headless (no Android) tournament between two levels of the AI engine (MaxQi),
+ * or between MaxQi and an external UCCI engine (or two of them), e.g., to compare
+ * two versions of MaxQi built as standalone executables.
+ *
+ * The engine and the referee are single global (native) instances, so each game in
+ * parallel runs in its own worker process (JVM). The master process splits the games
+ * among the workers, then collects their results:
+ *
+ *   $ java -cp classes -Djava.library.path=lib \
+ *         com.playxiangqi.hoxchess.selfplay.SelfPlayRunner --games 200 --a 2 --b 1
+ *
+ * See README.txt for how to build the classes and the native libraries.
+ */
+public class SelfPlayRunner {
+
+    private static final String USAGE =
+            "Usage: SelfPlayRunner [--games N] [--jobs J] [--a LEVEL] [--b LEVEL]"
+            + " [--max-plies P] [--seed S] [--engine-a COMMAND] [--engine-b COMMAND]";
+
+    // The options (shared by the master and the workers).
+    private int games_ = 100;
+    private int jobs_ = Runtime.getRuntime().availableProcessors();
+    private int levelA_ = 1;
+    private int levelB_ = 0;
+    private int maxPlies_ = 300;
+    private int seed_ = 0; // 0 = random
+    private String engineA_; // The command of a UCCI engine (null = the built-in MaxQi).
+    private String engineB_;
+
+    // The worker-only options.
+    private int firstGame_ = -1; // The worker plays the games firstGame_, firstGame_ + jobs_, ...
+    private String outPath_;
+
+    /**
+     * The result of a game, as written by a worker (one line per game).
+     */
+    private static class GameResult {
+        int game;
+        int scoreA2; // Twice the score of A (0 = loss, 1 = draw, 2 = win).
+        int plies;
+        String reason;
+        final long[] millis = new long[2]; // Per player (A, B).
+        final long[] nodes = new long[2];
+        final int[] moves = new int[2];
+
+        String format() {
+            return String.format(Locale.US, "%d %d %d %s %d %d %d %d %d %d",
+                    game, scoreA2, plies, reason,
+                    millis[0], nodes[0], moves[0], millis[1], nodes[1], moves[1]);
+        }
+
+        static GameResult parse(String line) {
+            final String[] fields = line.trim().split(" ");
+            if (fields.length != 10) return null;
+            GameResult result = new GameResult();
+            result.game = Integer.parseInt(fields[0]);
+            result.scoreA2 = Integer.parseInt(fields[1]);
+            result.plies = Integer.parseInt(fields[2]);
+            result.reason = fields[3];
+            for (int i = 0; i < 2; i++) {
+                result.millis[i] = Long.parseLong(fields[4 + 3*i]);
+                result.nodes[i] = Long.parseLong(fields[5 + 3*i]);
+                result.moves[i] = Integer.parseInt(fields[6 + 3*i]);
+            }
+            return result;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        SelfPlayRunner runner = new SelfPlayRunner();
+        if (!runner.parseArgs(args)) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        System.exit(runner.firstGame_ >= 0 ? runner.runWorker() : runner.runMaster());
+    }
+
+    private boolean parseArgs(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) return false;
+                final String name = args[i];
+                final String value = args[i + 1];
+                if ("--games".equals(name)) games_ = Integer.parseInt(value);
+                else if ("--jobs".equals(name)) jobs_ = Integer.parseInt(value);
+                else if ("--a".equals(name)) levelA_ = Integer.parseInt(value);
+                else if ("--b".equals(name)) levelB_ = Integer.parseInt(value);
+                else if ("--max-plies".equals(name)) maxPlies_ = Integer.parseInt(value);
+                else if ("--seed".equals(name)) seed_ = Integer.parseInt(value);
+                else if ("--engine-a".equals(name)) engineA_ = value;
+                else if ("--engine-b".equals(name)) engineB_ = value;
+                else if ("--worker".equals(name)) firstGame_ = Integer.parseInt(value);
+                else if ("--out".equals(name)) outPath_ = value;
+                else return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return games_ > 0 && jobs_ > 0 && maxPlies_ > 0
+                && (firstGame_ < 0 || outPath_ != null);
+    }
+
+    // ***************************************************************************
+    //
+    //         The master process
+    //
+    // ***************************************************************************
+
+    private int runMaster() throws IOException, InterruptedException {
+        jobs_ = Math.min(jobs_, games_);
+        System.err.println(String.format(Locale.US,
+                "Playing %d games: A (%s) vs. B (%s), %d jobs, seed %d",
+                games_, describe(engineA_, levelA_), describe(engineB_, levelB_), jobs_, seed_));
+
+        final File workDir = createTempDir();
+        final String javaBin = System.getProperty("java.home")
+                + File.separator + "bin" + File.separator + "java";
+        final long startMillis = System.currentTimeMillis();
+
+        List<Process> workers = new ArrayList<Process>();
+        for (int job = 0; job < jobs_; job++) {
+            List<String> command = new ArrayList<String>();
+            command.add(javaBin);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+            command.add(SelfPlayRunner.class.getName());
+            addOption(command, "--games", games_);
+            addOption(command, "--jobs", jobs_);
+            addOption(command, "--a", levelA_);
+            addOption(command, "--b", levelB_);
+            addOption(command, "--max-plies", maxPlies_);
+            addOption(command, "--seed", seed_);
+            if (engineA_ != null) {
+                command.add("--engine-a");
+                command.add(engineA_);
+            }
+            if (engineB_ != null) {
+                command.add("--engine-b");
+                command.add(engineB_);
+            }
+            addOption(command, "--worker", job);
+            command.add("--out");
+            command.add(new File(workDir, "games-" + job + ".txt").getPath());
+
+            // NOTE: The engine prints its debug output to stdout, so keep it out of the way.
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectOutput(new File(workDir, "worker-" + job + ".log"));
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            workers.add(builder.start());
+        }
+
+        int failedWorkers = 0;
+        for (Process worker : workers) {
+            if (worker.waitFor() != 0) ++failedWorkers;
+        }
+
+        List<GameResult> results = new ArrayList<GameResult>();
+        for (int job = 0; job < jobs_; job++) {
+            readResults(new File(workDir, "games-" + job + ".txt"), results);
+        }
+        report(results, System.currentTimeMillis() - startMillis);
+
+        if (failedWorkers > 0 || results.size() != games_) {
+            System.err.println(String.format(Locale.US,
+                    "WARNING: %d worker(s) failed; %d of %d games finished. See the logs in %s",
+                    failedWorkers, results.size(), games_, workDir));
+            return 1;
+        }
+        deleteDir(workDir);
+        return 0;
+    }
+
+    private void report(List<GameResult> results, long elapsedMillis) {
+        final int n = results.size();
+        int wins = 0, draws = 0, losses = 0;
+        long plies = 0;
+        final long[] millis = new long[2];
+        final long[] nodes = new long[2];
+        final long[] moves = new long[2];
+        for (GameResult result : results) {
+            if (result.scoreA2 == 2) ++wins;
+            else if (result.scoreA2 == 1) ++draws;
+            else ++losses;
+            plies += result.plies;
+            for (int i = 0; i < 2; i++) {
+                millis[i] += result.millis[i];
+                nodes[i] += result.nodes[i];
+                moves[i] += result.moves[i];
+            }
+        }
+
+        System.out.println(String.format(Locale.US,
+                "Games: %d (%.1f plies/game) in %.1f s", n, n > 0 ? (double) plies / n : 0.0,
+                elapsedMillis / 1000.0));
+        if (n == 0) return;
+
+        final double score = (wins + 0.5 * draws) / n;
+        System.out.println(String.format(Locale.US,
+                "A (%s) vs. B (%s): +%d =%d -%d, score %.1f%%",
+                describe(engineA_, levelA_), describe(engineB_, levelB_),
+                wins, draws, losses, 100 * score));
+
+        // The standard error of the mean score per game, then +/- 1.96 of it (95%).
+        final double variance = (wins * sq(1 - score) + draws * sq(0.5 - score)
+                + losses * sq(score)) / n;
+        final double margin = 1.96 * Math.sqrt(variance / n);
+        final double elo = toElo(score);
+        System.out.println(String.format(Locale.US,
+                "Elo(A - B): %s (95%%: %s .. %s)",
+                formatElo(elo), formatElo(toElo(score - margin)), formatElo(toElo(score + margin))));
+
+        final String[] names = { "A", "B" };
+        for (int i = 0; i < 2; i++) {
+            System.out.println(String.format(Locale.US,
+                    "%s: %d moves, %.1f ms/move, %d nodes/s",
+                    names[i], moves[i], moves[i] > 0 ? (double) millis[i] / moves[i] : 0.0,
+                    millis[i] > 0 ? 1000 * nodes[i] / millis[i] : 0));
+        }
+    }
+
+    private static String describe(String engine, int level) {
+        return (engine == null ? "" : engine + ", ") + "level " + level;
+    }
+
+    private static double sq(double x) { return x * x; }
+
+    private static double toElo(double score) {
+        if (score <= 0) return Double.NEGATIVE_INFINITY;
+        if (score >= 1) return Double.POSITIVE_INFINITY;
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static String formatElo(double elo) {
+        if (Double.isInfinite(elo)) return (elo > 0 ? "+inf" : "-inf");
+        return String.format(Locale.US, "%+.0f", elo);
+    }
+
+    private static void addOption(List<String> command, String name, int value) {
+        command.add(name);
+        command.add(String.valueOf(value));
+    }
+
+    private static void readResults(File file, List<GameResult> results) throws IOException {
+        if (!file.exists()) return;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final GameResult result = GameResult.parse(line);
+                if (result != null) results.add(result);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static File createTempDir() throws IOException {
+        final File dir = File.createTempFile("selfplay-", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Failed to create the directory " + dir);
+        }
+        return dir;
+    }
+
+    private static void deleteDir(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    // ***************************************************************************
+    //
+    //         The worker process
+    //
+    // ***************************************************************************
+
+    private int runWorker() throws IOException {
+        // The built-in engine is a single (native) instance: A and B share it if both use it.
+        final AIEngine builtInEngine = new AIEngine();
+        final AIEngine[] engines = {
+                createEngine(engineA_, builtInEngine), createEngine(engineB_, builtInEngine) };
+        final HostReferee referee = new HostReferee();
+
+        PrintWriter out = new PrintWriter(new FileWriter(outPath_));
+        try {
+            for (int game = firstGame_; game < games_; game += jobs_) {
+                final GameResult result = playGame(engines, referee, game);
+                out.println(result.format());
+                out.flush();
+                System.err.println(String.format(Locale.US,
+                        "Game %d: %s after %d plies (%s)", game,
+                        result.scoreA2 == 2 ? "A won" : (result.scoreA2 == 1 ? "drawn" : "B won"),
+                        result.plies, result.reason));
+            }
+        } finally {
+            out.close();
+            for (AIEngine engine : engines) {
+                if (engine instanceof UcciEngine) ((UcciEngine) engine).close();
+            }
+        }
+        return 0;
+    }
+
+    private static AIEngine createEngine(String command, AIEngine builtInEngine) {
+        if (command == null) return builtInEngine;
+        return new UcciEngine(Arrays.asList(command.trim().split(" +")));
+    }
+
+    /**
+     * Play a game. A is Red in the even games, and Black in the odd ones.
+     * Each engine is told the moves of the other (unless A and B are the same engine).
+     */
+    private GameResult playGame(AIEngine[] engines, HostReferee referee, int game) {
+        final boolean redIsA = (game % 2 == 0);
+        final GameResult result = new GameResult();
+        result.game = game;
+
+        for (int i = 0; i < 2; i++) {
+            if (i == 1 && engines[1] == engines[0]) break;
+            if (seed_ != 0) {
+                engines[i].setRandomSeed(seed_ + game);
+            }
+            engines[i].initGame();
+        }
+        referee.resetGame();
+
+        for (int ply = 0; ply < maxPlies_; ply++) {
+            final boolean redToMove = (ply % 2 == 0);
+            final int player = (redToMove == redIsA) ? 0 : 1; // 0 = A, 1 = B
+            final AIEngine aiEngine = engines[player];
+            aiEngine.setDifficultyLevel(player == 0 ? levelA_ : levelB_);
+
+            final long startNanos = System.nanoTime();
+            final String move = aiEngine.generateMove();
+            result.millis[player] += (System.nanoTime() - startNanos) / 1000000;
+            result.nodes[player] += aiEngine.getLastSearchStats().nodes;
+            result.moves[player]++;
+            result.plies = ply + 1;
+
+            int status = HostReferee.hoxGAME_STATUS_UNKNOWN;
+            if (isValidMoveFormat(move)) {
+                status = referee.validateMove(move.charAt(0) - '0', move.charAt(1) - '0',
+                        move.charAt(2) - '0', move.charAt(3) - '0');
+            }
+            if (status == HostReferee.hoxGAME_STATUS_UNKNOWN) { // No move or an invalid one?
+                result.scoreA2 = (player == 0 ? 0 : 2);
+                result.reason = "invalid-move:" + move;
+                return result;
+            }
+            if (engines[1 - player] != aiEngine) {
+                engines[1 - player].onHumanMove(move.charAt(0) - '0', move.charAt(1) - '0',
+                        move.charAt(2) - '0', move.charAt(3) - '0');
+            }
+            if (status == HostReferee.hoxGAME_STATUS_RED_WIN
+                    || status == HostReferee.hoxGAME_STATUS_BLACK_WIN) {
+                final boolean redWon = (status == HostReferee.hoxGAME_STATUS_RED_WIN);
+                result.scoreA2 = (redWon == redIsA ? 2 : 0);
+                result.reason = "game-over";
+                return result;
+            }
+            if (status == HostReferee.hoxGAME_STATUS_DRAWN) {
+                result.scoreA2 = 1;
+                result.reason = "drawn";
+                return result;
+            }
+        }
+
+        result.scoreA2 = 1; // Adjudicated as a draw.
+        result.reason = "max-plies";
+        return result;
+    }
+
+    private static boolean isValidMoveFormat(String move) {
+        if (move == null || move.length() != 4) return false;
+        for (int i = 0; i < 4; i++) {
+            if (!Character.isDigit(move.charAt(i))) return false;
+        }
+        return true;
+    }
+}
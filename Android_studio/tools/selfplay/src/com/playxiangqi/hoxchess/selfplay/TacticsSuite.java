@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2016 Huy Phan <huyphan@playxiangqi.com>
+ *
+ *  This file is part of HOXChess.
+ *
+ *  HOXChess is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  HOXChess is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with HOXChess.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.playxiangqi.hoxchess.selfplay;
+
+import com.playxiangqi.hoxchess.AIEngine;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A suite of tactical test positions for the AI engine (MaxQi).
+ *
+ * Each position is searched to increasing depths, each time from an empty hash table.
+ * A position is solved at the first depth from which the engine 's best move is
+ * (and stays) one of the solutions; the time-to-solution is the time of that search.
+ *
+ *   $ java -cp classes -Djava.library.path=lib \
+ *         com.playxiangqi.hoxchess.selfplay.TacticsSuite tactics.txt [--max-depth D] [--max-millis T]
+ *
+ * The suite file has one position per line: "id | solutions | position", where the
+ * position is either the moves from the initial position or "fen <fen>" (see
+ * AIEngine.analyze()), and the solutions are the best moves (separated by blanks),
+ * all in the format of AIEngine (e.g., "9081").
+ *
+ * The report ends with the average solving depth, which shows how much a change to the
+ * search (e.g., pruning, extensions) helps or hurts the deep positions.
+ */
+public class TacticsSuite {
+
+    private static class TestPosition {
+        String id;
+        List<String> solutions;
+        String moves;
+    }
+
+    private int maxDepth_ = 9;
+    private int maxMillis_ = 3000; // No deeper search past it.
+
+    public static void main(String[] args) throws IOException {
+        TacticsSuite suite = new TacticsSuite();
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--max-depth".equals(args[i]) && i + 1 < args.length) {
+                suite.maxDepth_ = Integer.parseInt(args[++i]);
+            } else if ("--max-millis".equals(args[i]) && i + 1 < args.length) {
+                suite.maxMillis_ = Integer.parseInt(args[++i]);
+            } else if (path == null) {
+                path = args[i];
+            } else {
+                path = null;
+                break;
+            }
+        }
+        if (path == null) {
+            System.err.println("Usage: TacticsSuite <suite-file> [--max-depth D] [--max-millis T]");
+            System.exit(1);
+        }
+        System.exit(suite.run(readPositions(path)));
+    }
+
+    private int run(List<TestPosition> positions) {
+        final AIEngine aiEngine = new AIEngine();
+        aiEngine.setRandomSeed(1); // The same searches on every run.
+
+        int solved = 0;
+        int solvedDepths = 0;
+        long solvedMillis = 0;
+        long totalMillis = 0;
+        for (TestPosition position : positions) {
+            int solvedDepth = -1;
+            long solvedAtMillis = 0;
+            String bestMove = "-";
+            for (int depth = 1; depth <= maxDepth_; depth++) {
+                aiEngine.initGame(); // With a fixed seed, it also clears the hash table.
+                final long startNanos = System.nanoTime();
+                final List<AIEngine.AnalysisLine> lines =
+                        aiEngine.analyze(position.moves, depth, 0, 1);
+                final long millis = (System.nanoTime() - startNanos) / 1000000;
+                totalMillis += millis;
+                if (lines == null || lines.isEmpty()) {
+                    System.err.println("Position " + position.id + ": no moves (or invalid moves).");
+                    break;
+                }
+
+                bestMove = lines.get(0).move;
+                if (!position.solutions.contains(bestMove)) {
+                    solvedDepth = -1;
+                } else if (solvedDepth < 0) {
+                    solvedDepth = depth;
+                    solvedAtMillis = millis;
+                }
+                if (millis > maxMillis_) break;
+            }
+
+            if (solvedDepth > 0) {
+                ++solved;
+                solvedDepths += solvedDepth;
+                solvedMillis += solvedAtMillis;
+                System.out.println(String.format(Locale.US, "%-8s solved: %s at depth %d in %d ms",
+                        position.id, bestMove, solvedDepth, solvedAtMillis));
+            } else {
+                System.out.println(String.format(Locale.US, "%-8s FAILED: %s (expected %s)",
+                        position.id, bestMove, position.solutions));
+            }
+        }
+
+        System.out.println(String.format(Locale.US,
+                "Solved %d of %d at depth %.1f on average; time-to-solution %d ms in total"
+                        + " (%.1f ms on average); %.1f s in all",
+                solved, positions.size(), solved > 0 ? (double) solvedDepths / solved : 0.0,
+                solvedMillis, solved > 0 ? (double) solvedMillis / solved : 0.0,
+                totalMillis / 1000.0));
+        return 0;
+    }
+
+    private static List<TestPosition> readPositions(String path) throws IOException {
+        List<TestPosition> positions = new ArrayList<TestPosition>();
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                final String[] fields = line.split("\\|");
+                if (fields.length != 3) {
+                    throw new IOException("Bad line in " + path + ": " + line);
+                }
+                TestPosition position = new TestPosition();
+                position.id = fields[0].trim();
+                position.solutions = Arrays.asList(fields[1].trim().split("\\s+"));
+                position.moves = fields[2].trim();
+                positions.add(position);
+            }
+        } finally {
+            reader.close();
+        }
+        return positions;
+    }
+}